@@ -0,0 +1,6 @@
+#!/bin/bash
+# Lets the db-replica container of docker-compose.replica.yml stream changes from this database.
+# Only run when the database is initialized, i.e. on a fresh volume.
+set -e
+
+echo "host replication all all md5" >> "$PGDATA/pg_hba.conf"
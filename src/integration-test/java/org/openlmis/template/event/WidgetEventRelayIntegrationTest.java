@@ -0,0 +1,240 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.event;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// events are committed, since the relay only reads them once no transaction can precede them
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles({"test", "test-run"})
+public class WidgetEventRelayIntegrationTest {
+
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+
+  private static final String RELAYED_DATE_SQL =
+      "SELECT relayeddate FROM template.widget_events WHERE eventid = ?";
+  private static final String MAX_ID_SQL = "SELECT MAX(eventid) FROM template.widget_events";
+  private static final String CURRENT_ID_SQL =
+      "SELECT currval('template.widget_events_eventid_seq')";
+  private static final String COUNT_SQL =
+      "SELECT COUNT(*) FROM template.widget_events WHERE eventid = ?";
+  private static final String INSERT_OLD_SQL = "INSERT INTO template.widget_events"
+      + " (type, widgetid, payload, createddate, relayeddate)"
+      + " VALUES ('CREATED', ?, '{}', now() - INTERVAL '2 days', ?) RETURNING eventid";
+
+  @MockBean
+  private WidgetEventSink sink;
+
+  @Autowired
+  private WidgetEventOutbox outbox;
+
+  @Autowired
+  private WidgetEventRelay relay;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Captor
+  private ArgumentCaptor<List<WidgetEvent>> batches;
+
+  @Test
+  public void shouldPublishUnrelayedEventsAndMarkThemRelayed()
+      throws IOException, InterruptedException {
+    UUID widgetId = UUID.randomUUID();
+    long eventId = new TransactionTemplate(transactionManager).execute(status -> {
+      outbox.append(WidgetEvent.Type.CREATED, widgetId, "created");
+      outbox.append(WidgetEvent.Type.DELETED, widgetId, "deleted");
+      return jdbcTemplate.queryForObject(MAX_ID_SQL, Long.class);
+    });
+    awaitWatermark(eventId);
+
+    relay.relay();
+
+    List<WidgetEvent> published = published(widgetId);
+
+    assertThat(published.stream().map(WidgetEvent::getType).collect(Collectors.toList()),
+        hasItems(WidgetEvent.Type.CREATED, WidgetEvent.Type.DELETED));
+    for (WidgetEvent event : published) {
+      assertThat(relayedDate(event.getId()), is(not(nullValue())));
+    }
+  }
+
+  @Test
+  public void shouldKeepEventsUnrelayedIfSinkFails() throws IOException, InterruptedException {
+    doThrow(new IOException("unavailable")).when(sink).publish(anyListOf(WidgetEvent.class));
+    long eventId = append(UUID.randomUUID());
+    awaitWatermark(eventId);
+
+    relay.relay();
+
+    assertThat(relayedDate(eventId), is(nullValue()));
+  }
+
+  @Test
+  public void shouldOnlyDeleteOldRelayedEvents() {
+    long relayed = insertOldEvent(new Timestamp(System.currentTimeMillis()));
+    long unrelayed = insertOldEvent(null);
+
+    outbox.compact(DAY, false);
+
+    assertThat(count(relayed), is(0L));
+    assertThat(count(unrelayed), is(1L));
+
+    outbox.compact(DAY, true);
+
+    assertThat(count(unrelayed), is(0L));
+  }
+
+  @Test
+  public void shouldNotReadEventsOfRunningTransactions() {
+    new TransactionTemplate(transactionManager).execute(status -> {
+      outbox.append(WidgetEvent.Type.CREATED, UUID.randomUUID(), "created");
+      long eventId = jdbcTemplate.queryForObject(MAX_ID_SQL, Long.class);
+
+      // this transaction is still running
+      long watermark;
+      try {
+        watermark = CompletableFuture.supplyAsync(outbox::updateWatermark).get();
+      } catch (InterruptedException | ExecutionException ex) {
+        throw new IllegalStateException(ex);
+      }
+
+      assertThat(watermark, is(lessThan(eventId)));
+      status.setRollbackOnly();
+      return null;
+    });
+  }
+
+  @Test
+  public void shouldNotRelayEventBeforeOneWithLowerIdCommittedLater()
+      throws IOException, InterruptedException, ExecutionException {
+    UUID lowerWidgetId = UUID.randomUUID();
+    UUID higherWidgetId = UUID.randomUUID();
+    CountDownLatch appended = new CountDownLatch(1);
+    CountDownLatch commit = new CountDownLatch(1);
+
+    // gets the lower id, but commits after the event with the higher id
+    CompletableFuture<Long> lower = CompletableFuture.supplyAsync(() ->
+        new TransactionTemplate(transactionManager).execute(status -> {
+          long eventId = append(lowerWidgetId);
+          appended.countDown();
+          try {
+            commit.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+          }
+          return eventId;
+        }));
+    appended.await();
+    long higher = append(higherWidgetId);
+
+    relay.relay();
+
+    assertThat(relayedDate(higher), is(nullValue()));
+
+    commit.countDown();
+    long lowerId = lower.get();
+    assertThat(lowerId, is(lessThan(higher)));
+    awaitWatermark(higher);
+    reset(sink);
+
+    relay.relay();
+
+    List<UUID> published = published(null)
+        .stream()
+        .map(WidgetEvent::getWidgetId)
+        .filter(id -> lowerWidgetId.equals(id) || higherWidgetId.equals(id))
+        .collect(Collectors.toList());
+    assertThat(published, contains(lowerWidgetId, higherWidgetId));
+  }
+
+  // appends an event in a transaction of its own unless one is running, returns its id
+  private long append(UUID widgetId) {
+    return new TransactionTemplate(transactionManager).execute(status -> {
+      outbox.append(WidgetEvent.Type.CREATED, widgetId, "created");
+      return jdbcTemplate.queryForObject(CURRENT_ID_SQL, Long.class);
+    });
+  }
+
+  private void awaitWatermark(long eventId) throws InterruptedException {
+    for (int attempt = 0; attempt < 50 && outbox.updateWatermark() < eventId; ++attempt) {
+      Thread.sleep(100);
+    }
+  }
+
+  // the published events of the given widget, or of all widgets if it is null
+  private List<WidgetEvent> published(UUID widgetId) throws IOException {
+    verify(sink, atLeastOnce()).publish(batches.capture());
+    return batches
+        .getAllValues()
+        .stream()
+        .flatMap(List::stream)
+        .filter(event -> null == widgetId || widgetId.equals(event.getWidgetId()))
+        .collect(Collectors.toList());
+  }
+
+  private long insertOldEvent(Timestamp relayedDate) {
+    return jdbcTemplate.queryForObject(INSERT_OLD_SQL, Long.class, UUID.randomUUID(),
+        relayedDate);
+  }
+
+  private Timestamp relayedDate(long eventId) {
+    return jdbcTemplate.queryForObject(RELAYED_DATE_SQL, Timestamp.class, eventId);
+  }
+
+  private long count(long eventId) {
+    return jdbcTemplate.queryForObject(COUNT_SQL, Long.class, eventId);
+  }
+
+}
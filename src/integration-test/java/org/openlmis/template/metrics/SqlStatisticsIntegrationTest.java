@@ -0,0 +1,117 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.template.WidgetDataBuilder;
+import org.openlmis.template.domain.Widget;
+import org.openlmis.template.repository.WidgetRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles({"test", "test-run"})
+@Transactional
+public class SqlStatisticsIntegrationTest {
+
+  private static final int WIDGET_COUNT = 5;
+
+  @Autowired
+  private WidgetRepository widgetRepository;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @After
+  public void tearDown() {
+    SqlStatistics.clear();
+  }
+
+  @Test
+  public void shouldCountStatementsAndRowsReadThroughDataSource() {
+    widgetRepository.saveAll(generateWidgets());
+    entityManager.flush();
+    entityManager.clear();
+    long count = widgetRepository.count();
+
+    SqlStatistics statistics = SqlStatistics.start();
+    List<Widget> widgets = widgetRepository.findAll();
+
+    assertThat(widgets).hasSize((int) count);
+    assertThat(statistics.getStatements()).isEqualTo(1);
+    assertThat(statistics.getRows()).isEqualTo(count);
+    assertThat(statistics.getTimeNanos()).isPositive();
+  }
+
+  @Test
+  public void shouldCountRowsChangedThroughDataSource() {
+    List<Widget> widgets = widgetRepository.saveAll(generateWidgets());
+    entityManager.flush();
+
+    SqlStatistics statistics = SqlStatistics.start();
+    widgets.forEach(widget -> widget.setName(widget.getName() + " updated"));
+    entityManager.flush();
+
+    assertThat(statistics.getStatements()).isEqualTo(WIDGET_COUNT);
+    assertThat(statistics.getRows()).isEqualTo(WIDGET_COUNT);
+  }
+
+  @Test
+  public void shouldReportMostRepeatedStatement() {
+    List<Widget> widgets = widgetRepository.saveAll(generateWidgets());
+    entityManager.flush();
+    // detached, so they are read from the database again
+    entityManager.clear();
+
+    SqlStatistics statistics = SqlStatistics.start();
+    widgets.forEach(widget -> widgetRepository.findById(widget.getId()));
+
+    assertThat(statistics.getMostRepeatedStatement().map(Map.Entry::getValue))
+        .contains(WIDGET_COUNT);
+  }
+
+  @Test
+  public void shouldNotCountStatementsOutsideOfRequests() {
+    SqlStatistics statistics = SqlStatistics.start();
+    SqlStatistics.clear();
+
+    widgetRepository.count();
+
+    assertThat(statistics.getStatements()).isZero();
+  }
+
+  private List<Widget> generateWidgets() {
+    return IntStream
+        .range(0, WIDGET_COUNT)
+        .mapToObj(i -> new WidgetDataBuilder().withName("counted" + i).buildAsNew())
+        .collect(Collectors.toList());
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.template.WidgetDataBuilder;
+import org.openlmis.template.domain.Widget;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles({"test", "test-run", "bulk"})
+@TestPropertySource(properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "spring.jpa.properties.hibernate.jdbc.batch_size=" + WidgetBatchingIntegrationTest.BATCH_SIZE})
+@Transactional
+public class WidgetBatchingIntegrationTest {
+
+  static final int BATCH_SIZE = 20;
+
+  private static final int WIDGET_COUNT = 100;
+
+  @Autowired
+  private WidgetRepository widgetRepository;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private Statistics statistics;
+
+  @Before
+  public void setUp() {
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+  }
+
+  @Test
+  public void shouldBatchInserts() {
+    List<Widget> widgets = generateWidgets();
+
+    statistics.clear();
+    widgetRepository.saveAll(widgets);
+    entityManager.flush();
+
+    assertThat(statistics.getEntityInsertCount()).isEqualTo(WIDGET_COUNT);
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(WIDGET_COUNT / BATCH_SIZE);
+  }
+
+  @Test
+  public void shouldBatchVersionedUpdates() {
+    List<Widget> widgets = widgetRepository.saveAll(generateWidgets());
+    entityManager.flush();
+
+    statistics.clear();
+    widgets.forEach(widget -> widget.setName(widget.getName() + " updated"));
+    entityManager.flush();
+
+    assertThat(statistics.getEntityUpdateCount()).isEqualTo(WIDGET_COUNT);
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(WIDGET_COUNT / BATCH_SIZE);
+    assertThat(widgets).allMatch(widget -> widget.getVersion() == 1);
+  }
+
+  private List<Widget> generateWidgets() {
+    return IntStream
+        .range(0, WIDGET_COUNT)
+        .mapToObj(i -> new WidgetDataBuilder()
+            .withName("batched" + i)
+            .withCode(null)
+            .buildAsNew())
+        .collect(Collectors.toList());
+  }
+
+}
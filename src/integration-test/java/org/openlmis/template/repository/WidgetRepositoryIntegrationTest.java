@@ -17,12 +17,26 @@ package org.openlmis.template.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.hibernate.Session;
 import org.junit.Test;
 import org.openlmis.template.WidgetDataBuilder;
 import org.openlmis.template.domain.Widget;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.repository.CrudRepository;
 
 public class WidgetRepositoryIntegrationTest extends BaseCrudRepositoryIntegrationTest<Widget> {
@@ -30,6 +44,9 @@ public class WidgetRepositoryIntegrationTest extends BaseCrudRepositoryIntegrati
   @Autowired
   private WidgetRepository widgetRepository;
 
+  @PersistenceContext
+  private EntityManager entityManager;
+
   @Override
   CrudRepository<Widget, UUID> getRepository() {
     return widgetRepository;
@@ -71,4 +88,244 @@ public class WidgetRepositoryIntegrationTest extends BaseCrudRepositoryIntegrati
     widgetRepository.saveAndFlush(widget1);
     widgetRepository.saveAndFlush(widget2);
   }
+
+  @Test
+  public void shouldFindWidgetsWithRequestedFieldsOnly() {
+    widgetRepository.saveAndFlush(generateInstance());
+
+    Page<Map<String, Object>> page = widgetRepository.findAllProjected(
+        Arrays.asList("code", "id"), PageRequest.of(0, 1, Sort.by(Sort.Direction.DESC, "code")));
+
+    assertThat(page.getContent()).hasSize(1);
+    assertThat(page.getContent().get(0)).containsOnlyKeys("code", "id");
+    assertThat(page.getContent().get(0).get("id")).isInstanceOf(UUID.class);
+    assertThat(page.getTotalElements()).isEqualTo(widgetRepository.count());
+  }
+
+  @Test
+  public void shouldFindSliceOfWidgets() {
+    widgetRepository.saveAndFlush(generateInstance());
+    widgetRepository.saveAndFlush(generateInstance());
+    long count = widgetRepository.count();
+
+    Slice<Widget> first = widgetRepository.findAllBy(PageRequest.of(0, (int) count - 1));
+    Slice<Widget> last = widgetRepository.findAllBy(PageRequest.of(1, (int) count - 1));
+
+    assertThat(first.getContent()).hasSize((int) count - 1);
+    assertThat(first.hasNext()).isTrue();
+    assertThat(last.getContent()).hasSize(1);
+    assertThat(last.hasNext()).isFalse();
+  }
+
+  @Test
+  public void shouldFindAllWidgetsInBatchesAfterTheLastOne() {
+    widgetRepository.saveAndFlush(generateInstance());
+    widgetRepository.saveAndFlush(generateInstance());
+    Widget withoutCode = generateInstance();
+    withoutCode.setCode(null);
+    widgetRepository.saveAndFlush(withoutCode);
+
+    for (Sort.Direction direction : Sort.Direction.values()) {
+      Sort sort = Sort.by(direction, "code");
+      List<UUID> expected = widgetRepository.findAll(sort.and(Sort.by("id")))
+          .stream()
+          .map(Widget::getId)
+          .collect(Collectors.toList());
+
+      List<UUID> found = new ArrayList<>();
+      Slice<Widget> batch = widgetRepository.findAllAfter(null, sort, 2);
+      batch.forEach(widget -> found.add(widget.getId()));
+
+      while (batch.hasNext()) {
+        List<Widget> content = batch.getContent();
+        batch = widgetRepository.findAllAfter(content.get(content.size() - 1), sort, 2);
+        batch.forEach(widget -> found.add(widget.getId()));
+      }
+
+      assertThat(found).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void shouldLoadPagesOfWidgetsReadOnly() {
+    widgetRepository.saveAndFlush(generateInstance());
+    entityManager.clear();
+    Session session = entityManager.unwrap(Session.class);
+
+    assertThat(widgetRepository.findAllReadOnly(PageRequest.of(0, 10)).getContent())
+        .isNotEmpty()
+        .allMatch(session::isReadOnly);
+    assertThat(widgetRepository.findAllBy(PageRequest.of(0, 10)).getContent())
+        .isNotEmpty()
+        .allMatch(session::isReadOnly);
+  }
+
+  @Test
+  public void shouldLoadPagesOfWidgetsForUpdateByDefault() {
+    widgetRepository.saveAndFlush(generateInstance());
+    entityManager.clear();
+    Session session = entityManager.unwrap(Session.class);
+
+    assertThat(widgetRepository.findAll(PageRequest.of(0, 10)).getContent())
+        .isNotEmpty()
+        .noneMatch(session::isReadOnly);
+  }
+
+  @Test
+  public void shouldStreamAllWidgetsInRequestedOrder() {
+    widgetRepository.saveAndFlush(generateInstance());
+    widgetRepository.saveAndFlush(generateInstance());
+
+    try (Stream<Widget> widgets = widgetRepository
+        .streamAll(PageRequest.of(0, Integer.MAX_VALUE, Sort.by("name")))) {
+      assertThat(widgets.map(Widget::getName).collect(Collectors.toList()))
+          .hasSize((int) widgetRepository.count())
+          .isSorted();
+    }
+  }
+
+  @Test
+  public void shouldStreamRequestedPageOfWidgets() {
+    widgetRepository.saveAndFlush(generateInstance());
+    widgetRepository.saveAndFlush(generateInstance());
+    widgetRepository.saveAndFlush(generateInstance());
+    PageRequest secondPage = PageRequest.of(1, 2, Sort.by("id"));
+    List<UUID> expected = widgetRepository.findAll(secondPage).map(Widget::getId).getContent();
+
+    try (Stream<Widget> widgets = widgetRepository.streamAll(secondPage)) {
+      assertThat(widgets.map(Widget::getId).collect(Collectors.toList()))
+          .isNotEmpty()
+          .isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void shouldStreamRequestedPageOfWidgetsWithRequestedFieldsOnly() {
+    Widget widget = widgetRepository.saveAndFlush(generateInstance());
+
+    try (Stream<Map<String, Object>> widgets = widgetRepository
+        .streamAllProjected(Collections.singletonList("id"), PageRequest.of(0, 2000))) {
+      assertThat(widgets.collect(Collectors.toList()))
+          .contains(Collections.singletonMap("id", widget.getId()))
+          .allMatch(projection -> projection.keySet().equals(Collections.singleton("id")));
+    }
+  }
+
+  @Test
+  public void shouldStreamAllWidgetIds() {
+    Widget widget = widgetRepository.saveAndFlush(generateInstance());
+
+    try (Stream<UUID> ids = widgetRepository.streamAllIds()) {
+      assertThat(ids.collect(Collectors.toList()))
+          .hasSize((int) widgetRepository.count())
+          .contains(widget.getId());
+    }
+  }
+
+  @Test
+  public void shouldRemoveWidgetById() {
+    Widget widget = widgetRepository.saveAndFlush(generateInstance());
+
+    assertThat(widgetRepository.removeById(widget.getId())).isTrue();
+    assertThat(widgetRepository.existsById(widget.getId())).isFalse();
+  }
+
+  @Test
+  public void shouldNotRemoveAnythingIfWidgetDoesNotExist() {
+    long count = widgetRepository.count();
+
+    assertThat(widgetRepository.removeById(UUID.randomUUID())).isFalse();
+    assertThat(widgetRepository.count()).isEqualTo(count);
+  }
+
+  @Test
+  public void shouldRemoveWidgetByIdIfVersionMatches() {
+    Widget widget = widgetRepository.saveAndFlush(generateInstance());
+
+    assertThat(widgetRepository.removeById(widget.getId(), Arrays.asList(0L, 1L))).isTrue();
+    assertThat(widgetRepository.existsById(widget.getId())).isFalse();
+  }
+
+  @Test
+  public void shouldNotRemoveWidgetIfVersionDoesNotMatch() {
+    Widget widget = widgetRepository.saveAndFlush(generateInstance());
+
+    assertThat(widgetRepository.removeById(widget.getId(), Collections.singleton(1L))).isFalse();
+    assertThat(widgetRepository.existsById(widget.getId())).isTrue();
+  }
+
+  @Test
+  public void shouldInsertWidgetOnUpsertIfItDoesNotExist() {
+    Widget widget = new WidgetDataBuilder().build();
+
+    widgetRepository.upsert(widget);
+
+    assertThat(widget.getVersion()).isEqualTo(0L);
+    assertThat(widgetRepository.findById(widget.getId())).contains(widget);
+  }
+
+  @Test
+  public void shouldUpdateWidgetOnUpsertIfItExists() {
+    Widget widget = widgetRepository.saveAndFlush(generateInstance());
+    Widget updated = new WidgetDataBuilder()
+        .withName("updated")
+        .withCode(null)
+        .build();
+    updated.setId(widget.getId());
+
+    widgetRepository.upsert(updated);
+    entityManager.clear();
+
+    assertThat(updated.getVersion()).isEqualTo(widget.getVersion() + 1);
+    assertThat(widgetRepository.findById(widget.getId())).contains(updated);
+  }
+
+  @Test
+  public void shouldUpdateWidgetIfVersionMatches() {
+    Widget widget = widgetRepository.saveAndFlush(generateInstance());
+    Widget updated = new WidgetDataBuilder().withName("updated").build();
+    updated.setId(widget.getId());
+
+    assertThat(widgetRepository.update(updated, Collections.singleton(widget.getVersion())))
+        .isTrue();
+    entityManager.clear();
+
+    assertThat(updated.getVersion()).isEqualTo(widget.getVersion() + 1);
+    assertThat(widgetRepository.findById(widget.getId())).contains(updated);
+  }
+
+  @Test
+  public void shouldUpdateWidgetWithAnyVersionIfNoneIsExpected() {
+    Widget widget = widgetRepository.saveAndFlush(generateInstance());
+    Widget updated = new WidgetDataBuilder().withName("updated").build();
+    updated.setId(widget.getId());
+
+    assertThat(widgetRepository.update(updated, Collections.emptySet())).isTrue();
+  }
+
+  @Test
+  public void shouldNotUpdateWidgetIfVersionDoesNotMatch() {
+    Widget widget = widgetRepository.saveAndFlush(generateInstance());
+    Widget updated = new WidgetDataBuilder().withName("updated").build();
+    updated.setId(widget.getId());
+
+    assertThat(widgetRepository.update(updated, Collections.singleton(widget.getVersion() + 1)))
+        .isFalse();
+    entityManager.clear();
+
+    assertThat(widgetRepository.findById(widget.getId())).contains(widget);
+  }
+
+  @Test
+  public void shouldNotUpdateWidgetIfItDoesNotExist() {
+    Widget widget = new WidgetDataBuilder().build();
+
+    assertThat(widgetRepository.update(widget, Collections.emptySet())).isFalse();
+    assertThat(widgetRepository.existsById(widget.getId())).isFalse();
+  }
+
+  @Test
+  public void shouldEstimateCount() {
+    assertThat(widgetRepository.estimateCount()).isGreaterThanOrEqualTo(0);
+  }
 }
@@ -0,0 +1,55 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.web;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+
+import org.apache.http.HttpStatus;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+
+public class ConnectionPoolsEndpointIntegrationTest extends BaseWebIntegrationTest {
+
+  private static final String RESOURCE_URL = "/actuator/connectionPools";
+
+  // the actuator endpoints are not part of the API, so they are not checked against the RAML
+  @Test
+  public void shouldReturnStartedConnectionPools() {
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getClientTokenHeader())
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("$", not(empty()))
+        .body("adaptive", hasItem(false));
+  }
+
+  @Test
+  public void shouldReturnUnauthorizedForConnectionPoolsIfUserIsNotAuthorized() {
+    restAssured
+        .given()
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+  }
+
+}
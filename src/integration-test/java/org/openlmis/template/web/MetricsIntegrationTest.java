@@ -0,0 +1,61 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web;
+
+import static org.hamcrest.Matchers.containsString;
+
+import org.apache.http.HttpStatus;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+
+public class MetricsIntegrationTest extends BaseWebIntegrationTest {
+
+  private static final String VERSION_URL = "/template";
+  private static final String PROMETHEUS_URL = "/actuator/prometheus";
+
+  @Test
+  public void shouldExportRequestMetricsInPrometheusFormat() {
+    restAssured
+        .given()
+        .when()
+        .get(VERSION_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    // the actuator endpoints are not part of the API, so they are not checked against the RAML
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getClientTokenHeader())
+        .when()
+        .get(PROMETHEUS_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(containsString("http_server_requests_seconds_bucket"))
+        .body(containsString("uri=\"/template\""))
+        .body(containsString("hikaricp_connections_active"));
+  }
+
+  @Test
+  public void shouldReturnUnauthorizedForPrometheusEndpointWithoutToken() {
+    restAssured
+        .given()
+        .when()
+        .get(PROMETHEUS_URL)
+        .then()
+        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.nidi.ramltester.junit.RamlMatchers;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.apache.http.HttpStatus;
+import org.junit.Test;
+import org.openlmis.template.WidgetDataBuilder;
+import org.openlmis.template.domain.Widget;
+import org.openlmis.template.i18n.MessageKeys;
+import org.openlmis.template.web.widget.ReactiveWidgetController;
+import org.openlmis.template.web.widget.WidgetDto;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+public class ReactiveWidgetControllerIntegrationTest extends BaseWebIntegrationTest {
+
+  private static final String RESOURCE_URL = ReactiveWidgetController.RESOURCE_PATH;
+  private static final String ID_URL = RESOURCE_URL + "/{id}";
+
+  private Widget widget = new WidgetDataBuilder().build();
+  private Widget other = new WidgetDataBuilder().build();
+
+  private ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  public void shouldStreamAllWidgetsInBatches() throws IOException {
+    given(widgetRepository.findAllAfter(isNull(), any(Sort.class), anyInt())).willReturn(
+        new SliceImpl<>(Collections.singletonList(widget), PageRequest.of(0, 1), true));
+    given(widgetRepository.findAllAfter(eq(widget), any(Sort.class), anyInt())).willReturn(
+        new SliceImpl<>(Collections.singletonList(other), PageRequest.of(0, 1), false));
+
+    String response = restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_STREAM_JSON_VALUE)
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .header(HttpHeaders.CONTENT_TYPE, startsWith(MediaType.APPLICATION_STREAM_JSON_VALUE))
+        .extract()
+        .asString();
+
+    List<WidgetDto> widgets = mapper.readerFor(WidgetDto.class).<WidgetDto>readValues(response)
+        .readAll();
+
+    assertThat(widgets, contains(WidgetDto.newInstance(widget), WidgetDto.newInstance(other)));
+    verify(widgetRepository, times(2)).findAllAfter(any(), any(Sort.class), anyInt());
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnBadRequestBeforeStreamingIfSortPropertyIsUnknown() {
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_STREAM_JSON_VALUE)
+        .queryParam("sort", "unknown")
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST)
+        .body(containsString(MessageKeys.ERROR_WIDGET_SORT_UNKNOWN));
+
+    verify(widgetRepository, never()).findAllAfter(any(), any(Sort.class), anyInt());
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnUnauthorizedForStreamIfUserIsNotAuthorized() {
+    restAssured
+        .given()
+        .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_STREAM_JSON_VALUE)
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnGivenWidget() {
+    given(widgetRepository.findById(widget.getId())).willReturn(Optional.of(widget));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .pathParam(ID, widget.getId().toString())
+        .when()
+        .get(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(ID, is(widget.getId().toString()))
+        .body("name", is(widget.getName()));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnNotFoundIfWidgetDoesNotExist() {
+    given(widgetRepository.findById(widget.getId())).willReturn(Optional.empty());
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .pathParam(ID, widget.getId().toString())
+        .when()
+        .get(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_NOT_FOUND));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import guru.nidi.ramltester.junit.RamlMatchers;
+import org.apache.http.HttpStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.template.WidgetDataBuilder;
+import org.openlmis.template.domain.Widget;
+import org.openlmis.template.web.widget.WidgetChangeFeed;
+import org.openlmis.template.web.widget.WidgetController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class WidgetChangesIntegrationTest extends BaseWebIntegrationTest {
+
+  private static final String CHANGES_URL = WidgetController.RESOURCE_PATH + "/changes";
+  private static final String SINCE = "since";
+  private static final String AUTHOR = "admin";
+
+  private static final String MAX_CURSOR_SQL =
+      "SELECT COALESCE(MAX(snapshot_pk), 0) FROM template.jv_snapshot";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private WidgetChangeFeed widgetChangeFeed;
+
+  private Widget widget = new WidgetDataBuilder().withVersion(0L).build();
+  private long since;
+
+  @Before
+  public void setUp() throws InterruptedException {
+    since = jdbcTemplate.queryForObject(MAX_CURSOR_SQL, Long.class);
+
+    javers.commit(AUTHOR, widget);
+    widget.setName("updated");
+    widget.setVersion(1L);
+    javers.commit(AUTHOR, widget);
+    javers.commitShallowDelete(AUTHOR, widget);
+
+    // the changes are returned once no transaction that could precede them is running
+    long until = jdbcTemplate.queryForObject(MAX_CURSOR_SQL, Long.class);
+    for (int attempt = 0; attempt < 50 && widgetChangeFeed.updateWatermark() < until; ++attempt) {
+      Thread.sleep(100);
+    }
+  }
+
+  @Test
+  public void shouldReturnChangesAfterGivenCursor() {
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam(SINCE, since)
+        .when()
+        .get(CHANGES_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("changes.type", contains("CREATED", "UPDATED", "DELETED"))
+        .body("changes.id", everyItem(is(widget.getId().toString())))
+        .body("changes[1].widget.name", is("updated"))
+        .body("changes[1].widget.version", equalTo(1))
+        .body("changes[2].widget", nullValue())
+        .body("last", is(true));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldPageChangesWithNextCursor() {
+    int nextCursor = restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam(SINCE, since)
+        .queryParam("size", 2)
+        .when()
+        .get(CHANGES_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("changes.type", contains("CREATED", "UPDATED"))
+        .body("last", is(false))
+        .extract()
+        .path("nextCursor");
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam(SINCE, nextCursor)
+        .when()
+        .get(CHANGES_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("changes", hasSize(1))
+        .body("changes[0].type", is("DELETED"))
+        .body("last", is(true));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnUnauthorizedForChangesEndpointIfUserIsNotAuthorized() {
+    restAssured
+        .given()
+        .when()
+        .get(CHANGES_URL)
+        .then()
+        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+}
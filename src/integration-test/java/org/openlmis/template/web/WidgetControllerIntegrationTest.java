@@ -16,24 +16,43 @@
 package org.openlmis.template.web;
 
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.BDDMockito.willReturn;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.protobuf.UnknownFieldSet;
 import guru.nidi.ramltester.junit.RamlMatchers;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 import org.apache.http.HttpStatus;
 import org.javers.core.commit.CommitId;
 import org.javers.core.commit.CommitMetadata;
@@ -47,12 +66,20 @@ import org.junit.Test;
 import org.openlmis.template.WidgetDataBuilder;
 import org.openlmis.template.domain.Widget;
 import org.openlmis.template.i18n.MessageKeys;
+import org.openlmis.template.util.ETags;
+import org.openlmis.template.web.IdempotencyKeyStore;
 import org.openlmis.template.web.widget.WidgetController;
 import org.openlmis.template.web.widget.WidgetDto;
+import org.openlmis.template.web.widget.WidgetIdFilter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @SuppressWarnings("PMD.TooManyMethods")
 public class WidgetControllerIntegrationTest extends BaseWebIntegrationTest {
@@ -62,8 +89,18 @@ public class WidgetControllerIntegrationTest extends BaseWebIntegrationTest {
   private static final String AUDIT_LOG_URL = ID_URL + "/auditLog";
 
   private static final String NAME = "name";
+  private static final String CODE = "code";
+  private static final String FIELDS = "fields";
+  private static final String WITH_TOTAL = "withTotal";
+  private static final String VERSION_FIELD = "version";
 
-  private Widget widget = new WidgetDataBuilder().build();
+  private static final String SMILE = "application/x-jackson-smile";
+  private static final String CBOR = "application/cbor";
+  private static final String PROTOBUF = "application/x-protobuf";
+
+  private static final long VERSION = 3;
+
+  private Widget widget = new WidgetDataBuilder().withVersion(VERSION).build();
   private WidgetDto widgetDto = WidgetDto.newInstance(widget);
 
   private GlobalId globalId = new UnboundedValueObjectId(Widget.class.getSimpleName());
@@ -73,139 +110,741 @@ public class WidgetControllerIntegrationTest extends BaseWebIntegrationTest {
   private CommitMetadata commitMetadata = new CommitMetadata(
       "admin", Maps.newHashMap(), LocalDateTime.now(), commitId);
 
+  private ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+  private ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+
+  @Autowired
+  private WidgetIdFilter widgetIdFilter;
+
   @Before
   public void setUp() {
     given(widgetRepository.saveAndFlush(any(Widget.class))).willAnswer(new SaveAnswer<>());
+    willAnswer(invocation -> {
+      invocation.getArgument(0, Widget.class).setVersion(VERSION);
+      return null;
+    }).given(widgetRepository).upsert(any(Widget.class));
     change.bindToCommit(commitMetadata);
   }
 
   @Test
-  public void shouldReturnPageOfWidgets() {
-    given(widgetRepository.findAll(any(Pageable.class)))
-        .willReturn(new PageImpl<>(Collections.singletonList(widget)));
+  public void shouldReturnPageOfWidgets() {
+    given(widgetRepository.findAllReadOnly(any(Pageable.class)))
+        .willReturn(new PageImpl<>(Collections.singletonList(widget)));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam("page", pageable.getPageNumber())
+        .queryParam("size", pageable.getPageSize())
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("content", hasSize(1))
+        .body("content[0].id", is(widget.getId().toString()))
+        .body("content[0].name", is(widget.getName()));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnPageOfWidgetsAsSmile() throws IOException {
+    given(widgetRepository.findAllReadOnly(any(Pageable.class)))
+        .willReturn(new PageImpl<>(Collections.singletonList(widget)));
+
+    byte[] response = restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.ACCEPT, SMILE)
+        .queryParam("page", pageable.getPageNumber())
+        .queryParam("size", pageable.getPageSize())
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .header(HttpHeaders.CONTENT_TYPE, startsWith(SMILE))
+        .extract()
+        .asByteArray();
+
+    JsonNode page = smileMapper.readTree(response);
+    assertThat(page.get("content").size(), is(1));
+    assertThat(page.get("content").get(0).get(ID).asText(), is(widget.getId().toString()));
+    assertThat(page.get("content").get(0).get(NAME).asText(), is(widget.getName()));
+    assertThat(page.get("totalElements").asLong(), is(1L));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldStreamWidgetsIfPageSizeIsOverLimit() {
+    Widget other = new WidgetDataBuilder().build();
+    given(widgetRepository.streamAll(any(Pageable.class))).willReturn(Stream.of(widget, other));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam("page", 0)
+        .queryParam("size", 5000)
+        .queryParam("sort", "name")
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .body("content", hasSize(2))
+        .body("content[1].id", is(other.getId().toString()))
+        .body("totalElements", is(2))
+        .body("totalPages", is(1))
+        .body("size", is(5000))
+        .body("numberOfElements", is(2))
+        .body("first", is(true))
+        .body("last", is(true))
+        .body("sort.sorted", is(true))
+        .body("pageable.pageSize", is(5000));
+
+    verify(widgetRepository, never()).findAllReadOnly(any(Pageable.class));
+    verify(widgetRepository, never()).count();
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnNotAcceptableIfStreamedPageIsNotRequestedAsJson() {
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.ACCEPT, CBOR)
+        .queryParam("page", 0)
+        .queryParam("size", 5000)
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_NOT_ACCEPTABLE);
+
+    verify(widgetRepository, never()).streamAll(any(Pageable.class));
+  }
+
+  @Test
+  public void shouldStreamWidgetsIfPageSizeIsNotGiven() {
+    given(widgetRepository.streamAll(any(Pageable.class))).willReturn(Stream.of(widget));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("content", hasSize(1))
+        .body("content[0].id", is(widget.getId().toString()))
+        .body("totalElements", is(1));
+
+    verify(widgetRepository, never()).findAllReadOnly(any(Pageable.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnSliceOfWidgetsWithoutCountingThem() {
+    given(widgetRepository.findAllBy(any(Pageable.class)))
+        .willReturn(new SliceImpl<>(Collections.singletonList(widget), pageable, true));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam("page", pageable.getPageNumber())
+        .queryParam("size", pageable.getPageSize())
+        .queryParam(WITH_TOTAL, false)
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("content", hasSize(1))
+        .body("content[0].id", is(widget.getId().toString()))
+        .body("last", is(false))
+        .body("", not(hasKey("totalElements")));
+
+    verify(widgetRepository, never()).findAllReadOnly(any(Pageable.class));
+    verify(widgetRepository, never()).count();
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnPageOfWidgetsWithApproximateTotal() {
+    given(widgetRepository.findAllBy(any(Pageable.class)))
+        .willReturn(new SliceImpl<>(Collections.singletonList(widget), pageable, true));
+    given(widgetRepository.estimateCount()).willReturn(5000L);
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam("page", pageable.getPageNumber())
+        .queryParam("size", pageable.getPageSize())
+        .queryParam(WITH_TOTAL, "approximate")
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("content", hasSize(1))
+        .body("totalElements", is(5000));
+
+    verify(widgetRepository, never()).findAllReadOnly(any(Pageable.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldNotReturnLastPageIfApproximateTotalIsStale() {
+    Pageable firstWidget = PageRequest.of(0, 1);
+    given(widgetRepository.findAllBy(any(Pageable.class)))
+        .willReturn(new SliceImpl<>(Collections.singletonList(widget), firstWidget, true));
+    // the planner statistics are empty before the table is analyzed for the first time
+    given(widgetRepository.estimateCount()).willReturn(0L);
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam("page", firstWidget.getPageNumber())
+        .queryParam("size", firstWidget.getPageSize())
+        .queryParam(WITH_TOTAL, "approximate")
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("content", hasSize(1))
+        .body("totalElements", is(2))
+        .body("last", is(false));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnBadRequestForInvalidWithTotalValue() {
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam(WITH_TOTAL, "maybe")
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_WITH_TOTAL_INVALID));
+  }
+
+  @Test
+  public void shouldReturnPageOfWidgetsWithRequestedFieldsOnly() {
+    Map<String, Object> projection = new LinkedHashMap<>();
+    projection.put(ID, widget.getId());
+    projection.put(CODE, widget.getCode());
+    given(widgetRepository.findAllProjected(anyCollection(), any(Pageable.class)))
+        .willReturn(new PageImpl<>(Collections.singletonList(projection)));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam(FIELDS, "id,code")
+        .queryParam("page", pageable.getPageNumber())
+        .queryParam("size", pageable.getPageSize())
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("content", hasSize(1))
+        .body("content[0].id", is(widget.getId().toString()))
+        .body("content[0].code", is(widget.getCode()))
+        .body("content[0]", not(hasKey(NAME)));
+
+    verify(widgetRepository)
+        .findAllProjected(eq(new HashSet<>(Arrays.asList(ID, CODE))), any(Pageable.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldStreamWidgetsWithRequestedFieldsOnlyIfPageSizeIsOverLimit() {
+    given(widgetRepository.streamAllProjected(anyCollection(), any(Pageable.class)))
+        .willReturn(Stream.of(Collections.singletonMap(ID, widget.getId())));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam(FIELDS, "id")
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .body("content", hasSize(1))
+        .body("content[0].id", is(widget.getId().toString()))
+        .body("content[0]", not(hasKey(NAME)))
+        .body("totalElements", is(1));
+
+    verify(widgetRepository, never()).findAllProjected(anyCollection(), any(Pageable.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnBadRequestIfUnknownFieldIsRequested() {
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam(FIELDS, "id,owner")
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_FIELD_UNKNOWN));
+
+    verify(widgetRepository, never()).findAllProjected(anyCollection(), any(Pageable.class));
+  }
+
+  @Test
+  public void shouldReturnBadRequestIfProjectionIsSortedByUnknownProperty() {
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .queryParam(FIELDS, "id,code")
+        .queryParam("sort", "owner,desc")
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_SORT_UNKNOWN));
+
+    verify(widgetRepository, never()).findAllProjected(anyCollection(), any(Pageable.class));
+  }
+
+  @Test
+  public void shouldReturnUnauthorizedForAllWidgetsEndpointIfUserIsNotAuthorized() {
+    restAssured.given()
+        .when()
+        .get(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldCreateWidget() {
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .body(widgetDto)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED)
+        .body(ID, is(notNullValue()))
+        .body(NAME, is(widgetDto.getName()));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReplayCreatedWidgetForRepeatedIdempotencyKey() {
+    String idempotencyKey = UUID.randomUUID().toString();
+
+    String id = restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .header(IdempotencyKeyStore.HEADER, idempotencyKey)
+        .body(widgetDto)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED)
+        .extract()
+        .path(ID);
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .header(IdempotencyKeyStore.HEADER, idempotencyKey)
+        .body(widgetDto)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED)
+        .body(ID, is(id))
+        .body(NAME, is(widgetDto.getName()));
+
+    verify(widgetRepository, times(1)).saveAndFlush(any(Widget.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldNotReplayCreatedWidgetForIdempotencyKeyOfAnotherPrincipal() {
+    String idempotencyKey = UUID.randomUUID().toString();
+
+    String id = restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .header(IdempotencyKeyStore.HEADER, idempotencyKey)
+        .body(widgetDto)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED)
+        .extract()
+        .path(ID);
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getClientTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .header(IdempotencyKeyStore.HEADER, idempotencyKey)
+        .body(widgetDto)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED)
+        .body(ID, not(id));
+
+    verify(widgetRepository, times(2)).saveAndFlush(any(Widget.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnBadRequestMessageIfIdempotencyKeyIsReusedForAnotherWidget() {
+    String idempotencyKey = UUID.randomUUID().toString();
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .header(IdempotencyKeyStore.HEADER, idempotencyKey)
+        .body(widgetDto)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED);
+
+    widgetDto.setName("other");
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .header(IdempotencyKeyStore.HEADER, idempotencyKey)
+        .body(widgetDto)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_IDEMPOTENCY_KEY_REUSED));
+
+    verify(widgetRepository, times(1)).saveAndFlush(any(Widget.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldCreateWidgetFromSmile() throws IOException {
+    byte[] response = restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, SMILE)
+        .header(HttpHeaders.ACCEPT, SMILE)
+        .body(smileMapper.writeValueAsBytes(widgetDto))
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED)
+        .header(HttpHeaders.CONTENT_TYPE, startsWith(SMILE))
+        .extract()
+        .asByteArray();
+
+    WidgetDto created = smileMapper.readValue(response, WidgetDto.class);
+    assertThat(created.getId(), is(notNullValue()));
+    assertThat(created.getName(), is(widgetDto.getName()));
+    assertThat(created.getCode(), is(widgetDto.getCode()));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnUnauthorizedForCreateWidgetEndpointIfUserIsNotAuthorized() {
+    restAssured
+        .given()
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .body(widgetDto)
+        .when()
+        .post(RESOURCE_URL)
+        .then()
+        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnGivenWidget() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .pathParam(ID, widgetDto.getId().toString())
+        .when()
+        .get(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .header(HttpHeaders.ETAG, ETags.fromVersion(VERSION))
+        .body(ID, is(widgetDto.getId().toString()))
+        .body(NAME, is(widgetDto.getName()))
+        .body(VERSION_FIELD, is((int) VERSION));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnGivenWidgetWithoutEtagIfItHasNoVersion() {
+    Widget unversioned = new WidgetDataBuilder().withVersion(null).build();
+    given(widgetRepository.findById(unversioned.getId())).willReturn(Optional.of(unversioned));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .pathParam(ID, unversioned.getId().toString())
+        .when()
+        .get(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .header(HttpHeaders.ETAG, nullValue())
+        .body(ID, is(unversioned.getId().toString()));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnNotModifiedIfGivenWidgetVersionIsCurrent() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.IF_NONE_MATCH, ETags.fromVersion(VERSION))
+        .pathParam(ID, widgetDto.getId().toString())
+        .when()
+        .get(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_NOT_MODIFIED);
+
+    verify(widgetRepository).findById(widgetDto.getId());
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnGivenWidgetAsCbor() throws IOException {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+
+    byte[] response = restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.ACCEPT, CBOR)
+        .pathParam(ID, widgetDto.getId().toString())
+        .when()
+        .get(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .header(HttpHeaders.CONTENT_TYPE, startsWith(CBOR))
+        .extract()
+        .asByteArray();
+
+    assertThat(cborMapper.readValue(response, WidgetDto.class), is(widgetDto));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnGivenWidgetAsProtobuf() throws IOException {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
 
-    restAssured
+    byte[] response = restAssured
         .given()
         .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
-        .queryParam("page", pageable.getPageNumber())
-        .queryParam("size", pageable.getPageSize())
+        .header(HttpHeaders.ACCEPT, PROTOBUF)
+        .pathParam(ID, widgetDto.getId().toString())
         .when()
-        .get(RESOURCE_URL)
+        .get(ID_URL)
         .then()
         .statusCode(HttpStatus.SC_OK)
-        .body("content", hasSize(1))
-        .body("content[0].id", is(widget.getId().toString()))
-        .body("content[0].name", is(widget.getName()));
+        .header(HttpHeaders.CONTENT_TYPE, startsWith(PROTOBUF))
+        .extract()
+        .asByteArray();
+
+    UnknownFieldSet fields = UnknownFieldSet.parseFrom(response);
+    assertThat(fields.getField(1).getLengthDelimitedList().get(0).toStringUtf8(),
+        is(widgetDto.getId().toString()));
+    assertThat(fields.getField(2).getLengthDelimitedList().get(0).toStringUtf8(),
+        is(widgetDto.getName()));
 
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
   @Test
-  public void shouldReturnUnauthorizedForAllWidgetsEndpointIfUserIsNotAuthorized() {
-    restAssured.given()
+  public void shouldReturnNotFoundMessageIfWidgetDoesNotExistForGivenWidgetEndpoint() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.empty());
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .pathParam(ID, widgetDto.getId().toString())
         .when()
-        .get(RESOURCE_URL)
+        .get(ID_URL)
         .then()
-        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+        .statusCode(HttpStatus.SC_NOT_FOUND)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_NOT_FOUND));
 
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
   @Test
-  public void shouldCreateWidget() {
+  public void shouldReturnGivenWidgetMissingInIdFilter() {
+    given(widgetRepository.existsById(widgetDto.getId())).willReturn(true);
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+    // the widget was created by another instance, whose event has not arrived yet
+    given(widgetRepository.streamAllIds()).willReturn(Stream.empty());
+    ReflectionTestUtils.setField(widgetIdFilter, "enabled", true);
+
+    try {
+      widgetIdFilter.rebuild();
+
+      restAssured
+          .given()
+          .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+          .pathParam(ID, widgetDto.getId().toString())
+          .when()
+          .get(ID_URL)
+          .then()
+          .statusCode(HttpStatus.SC_OK)
+          .body(ID, is(widgetDto.getId().toString()));
+    } finally {
+      ReflectionTestUtils.setField(widgetIdFilter, "enabled", false);
+      ReflectionTestUtils.setField(widgetIdFilter, "filter", null);
+    }
+
+    verify(widgetRepository).existsById(widgetDto.getId());
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnUnauthorizedForGetWidgetEndpointIfUserIsNotAuthorized() {
     restAssured
         .given()
-        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
-        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-        .body(widgetDto)
+        .pathParam(ID, widgetDto.getId().toString())
         .when()
-        .post(RESOURCE_URL)
+        .get(ID_URL)
         .then()
-        .statusCode(HttpStatus.SC_CREATED)
-        .body(ID, is(notNullValue()))
-        .body(NAME, is(widgetDto.getName()));
+        .statusCode(HttpStatus.SC_UNAUTHORIZED);
 
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
   @Test
-  public void shouldReturnUnauthorizedForCreateWidgetEndpointIfUserIsNotAuthorized() {
+  public void shouldUpdateWidget() {
     restAssured
         .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
         .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .pathParam(ID, widgetDto.getId().toString())
         .body(widgetDto)
         .when()
-        .post(RESOURCE_URL)
+        .put(ID_URL)
         .then()
-        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+        .statusCode(HttpStatus.SC_OK)
+        .body(ID, is(widgetDto.getId().toString()))
+        .body(NAME, is(widgetDto.getName()));
 
+    verify(widgetRepository).upsert(widget);
+    verify(widgetRepository, never()).findById(any(UUID.class));
+    verify(widgetRepository, never()).saveAndFlush(any(Widget.class));
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
   @Test
-  public void shouldReturnGivenWidget() {
-    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+  public void shouldUpdateWidgetIfVersionMatches() {
+    given(widgetRepository.update(any(Widget.class), eq(Collections.singleton(VERSION))))
+        .willAnswer(invocation -> {
+          invocation.getArgument(0, Widget.class).setVersion(VERSION + 1);
+          return true;
+        });
 
     restAssured
         .given()
         .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .header(HttpHeaders.IF_MATCH, ETags.fromVersion(VERSION))
         .pathParam(ID, widgetDto.getId().toString())
+        .body(widgetDto)
         .when()
-        .get(ID_URL)
+        .put(ID_URL)
         .then()
         .statusCode(HttpStatus.SC_OK)
+        .header(HttpHeaders.ETAG, ETags.fromVersion(VERSION + 1))
         .body(ID, is(widgetDto.getId().toString()))
-        .body(NAME, is(widgetDto.getName()));
+        .body(VERSION_FIELD, is((int) VERSION + 1));
 
+    verify(widgetRepository, never()).upsert(any(Widget.class));
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
   @Test
-  public void shouldReturnNotFoundMessageIfWidgetDoesNotExistForGivenWidgetEndpoint() {
-    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.empty());
+  public void shouldReturnPreconditionFailedIfVersionDoesNotMatchForUpdateWidgetEndpoint() {
+    given(widgetRepository.update(any(Widget.class), anyCollection())).willReturn(false);
 
     restAssured
         .given()
         .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .header(HttpHeaders.IF_MATCH, ETags.fromVersion(VERSION))
         .pathParam(ID, widgetDto.getId().toString())
+        .body(widgetDto)
         .when()
-        .get(ID_URL)
+        .put(ID_URL)
         .then()
-        .statusCode(HttpStatus.SC_NOT_FOUND)
-        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_NOT_FOUND));
+        .statusCode(HttpStatus.SC_PRECONDITION_FAILED)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_VERSION_MISMATCH));
 
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
   @Test
-  public void shouldReturnUnauthorizedForGetWidgetEndpointIfUserIsNotAuthorized() {
+  public void shouldReturnPreconditionFailedIfIfMatchHasNoStrongTagForUpdateWidgetEndpoint() {
     restAssured
         .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .header(HttpHeaders.IF_MATCH, "W/" + ETags.fromVersion(VERSION))
         .pathParam(ID, widgetDto.getId().toString())
+        .body(widgetDto)
         .when()
-        .get(ID_URL)
+        .put(ID_URL)
         .then()
-        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+        .statusCode(HttpStatus.SC_PRECONDITION_FAILED)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_VERSION_MISMATCH));
 
+    verify(widgetRepository, never()).update(any(Widget.class), anyCollection());
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
   @Test
-  public void shouldUpdateWidget() {
-    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
-
-    restAssured
+  public void shouldUpdateWidgetFromCbor() throws IOException {
+    byte[] response = restAssured
         .given()
         .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
-        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .header(HttpHeaders.CONTENT_TYPE, CBOR)
+        .header(HttpHeaders.ACCEPT, CBOR)
         .pathParam(ID, widgetDto.getId().toString())
-        .body(widgetDto)
+        .body(cborMapper.writeValueAsBytes(widgetDto))
         .when()
         .put(ID_URL)
         .then()
         .statusCode(HttpStatus.SC_OK)
-        .body(ID, is(widgetDto.getId().toString()))
-        .body(NAME, is(widgetDto.getName()));
+        .header(HttpHeaders.CONTENT_TYPE, startsWith(CBOR))
+        .extract()
+        .asByteArray();
+
+    assertThat(cborMapper.readValue(response, WidgetDto.class), is(widgetDto));
 
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
@@ -218,7 +857,6 @@ public class WidgetControllerIntegrationTest extends BaseWebIntegrationTest {
     Map<String, String> widgetMap = new ObjectMapper().readValue(widgetJson,
         new TypeReference<Map<String, String>>() {});
     UUID pathId = UUID.randomUUID();
-    given(widgetRepository.findById(pathId)).willReturn(Optional.empty());
 
     restAssured
         .given()
@@ -268,9 +906,197 @@ public class WidgetControllerIntegrationTest extends BaseWebIntegrationTest {
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
+  @Test
+  public void shouldPatchWidget() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, WidgetController.MERGE_PATCH_JSON_VALUE)
+        .header(HttpHeaders.IF_MATCH, ETags.fromVersion(VERSION))
+        .pathParam(ID, widgetDto.getId().toString())
+        .body("{\"name\":\"patched\"}")
+        .when()
+        .patch(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .header(HttpHeaders.ETAG, ETags.fromVersion(VERSION))
+        .body(ID, is(widgetDto.getId().toString()))
+        .body(NAME, is("patched"))
+        .body(CODE, is(widgetDto.getCode()));
+
+    verify(widgetRepository).saveAndFlush(widget);
+    verify(widgetRepository, never()).upsert(any(Widget.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldClearFieldsSetToNullInPatch() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, WidgetController.MERGE_PATCH_JSON_VALUE)
+        .pathParam(ID, widgetDto.getId().toString())
+        .body("{\"code\":null}")
+        .when()
+        .patch(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(NAME, is(widgetDto.getName()))
+        .body(CODE, nullValue());
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnNotFoundMessageIfWidgetDoesNotExistForPatchWidgetEndpoint() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.empty());
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, WidgetController.MERGE_PATCH_JSON_VALUE)
+        .pathParam(ID, widgetDto.getId().toString())
+        .body("{\"name\":\"patched\"}")
+        .when()
+        .patch(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_NOT_FOUND));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnPreconditionFailedIfVersionDoesNotMatchForPatchWidgetEndpoint() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, WidgetController.MERGE_PATCH_JSON_VALUE)
+        .header(HttpHeaders.IF_MATCH, ETags.fromVersion(VERSION - 1))
+        .pathParam(ID, widgetDto.getId().toString())
+        .body("{\"name\":\"patched\"}")
+        .when()
+        .patch(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_PRECONDITION_FAILED)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_VERSION_MISMATCH));
+
+    verify(widgetRepository, never()).saveAndFlush(any(Widget.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldNotSaveWidgetIfPatchChangesNothing() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, WidgetController.MERGE_PATCH_JSON_VALUE)
+        .pathParam(ID, widgetDto.getId().toString())
+        .body("{\"name\":\"" + widgetDto.getName() + "\"}")
+        .when()
+        .patch(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .header(HttpHeaders.ETAG, ETags.fromVersion(VERSION))
+        .body(NAME, is(widgetDto.getName()));
+
+    verify(widgetRepository, never()).saveAndFlush(any(Widget.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnPreconditionFailedIfConditionalPatchLosesVersionRace() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+    given(widgetRepository.saveAndFlush(any(Widget.class)))
+        .willThrow(new ObjectOptimisticLockingFailureException(Widget.class, widget.getId()));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, WidgetController.MERGE_PATCH_JSON_VALUE)
+        .header(HttpHeaders.IF_MATCH, ETags.fromVersion(VERSION))
+        .pathParam(ID, widgetDto.getId().toString())
+        .body("{\"name\":\"patched\"}")
+        .when()
+        .patch(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_PRECONDITION_FAILED)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_VERSION_MISMATCH));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnConflictIfUnconditionalPatchLosesVersionRace() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+    given(widgetRepository.saveAndFlush(any(Widget.class)))
+        .willThrow(new ObjectOptimisticLockingFailureException(Widget.class, widget.getId()));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, WidgetController.MERGE_PATCH_JSON_VALUE)
+        .pathParam(ID, widgetDto.getId().toString())
+        .body("{\"name\":\"patched\"}")
+        .when()
+        .patch(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_CONFLICT)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_CONCURRENT_MODIFICATION));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnBadRequestMessageIfPatchChangesId() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, WidgetController.MERGE_PATCH_JSON_VALUE)
+        .pathParam(ID, widgetDto.getId().toString())
+        .body("{\"id\":\"" + UUID.randomUUID() + "\"}")
+        .when()
+        .patch(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_ID_MISMATCH));
+
+    verify(widgetRepository, never()).saveAndFlush(any(Widget.class));
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnBadRequestMessageIfPatchIsInvalid() {
+    given(widgetRepository.findById(widgetDto.getId())).willReturn(Optional.of(widget));
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, WidgetController.MERGE_PATCH_JSON_VALUE)
+        .pathParam(ID, widgetDto.getId().toString())
+        .body("{\"id\":\"not-a-uuid\"}")
+        .when()
+        .patch(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_PATCH_INVALID));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
   @Test
   public void shouldDeleteWidget() {
-    given(widgetRepository.existsById(widgetDto.getId())).willReturn(true);
+    given(widgetRepository.removeById(widgetDto.getId())).willReturn(true);
 
     restAssured
         .given()
@@ -281,12 +1107,13 @@ public class WidgetControllerIntegrationTest extends BaseWebIntegrationTest {
         .then()
         .statusCode(HttpStatus.SC_NO_CONTENT);
 
+    verify(widgetRepository, never()).existsById(any(UUID.class));
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
   @Test
   public void shouldReturnNotFoundMessageIfWidgetDoesNotExistForDeleteWidgetEndpoint() {
-    given(widgetRepository.existsById(widgetDto.getId())).willReturn(false);
+    given(widgetRepository.removeById(widgetDto.getId())).willReturn(false);
 
     restAssured
         .given()
@@ -301,6 +1128,43 @@ public class WidgetControllerIntegrationTest extends BaseWebIntegrationTest {
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
+  @Test
+  public void shouldDeleteWidgetIfVersionMatches() {
+    given(widgetRepository.removeById(widgetDto.getId(), Collections.singleton(VERSION)))
+        .willReturn(true);
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.IF_MATCH, ETags.fromVersion(VERSION))
+        .pathParam(ID, widgetDto.getId().toString())
+        .when()
+        .delete(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnPreconditionFailedIfVersionDoesNotMatchForDeleteWidgetEndpoint() {
+    given(widgetRepository.removeById(widgetDto.getId(), Collections.singleton(VERSION)))
+        .willReturn(false);
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.IF_MATCH, ETags.fromVersion(VERSION))
+        .pathParam(ID, widgetDto.getId().toString())
+        .when()
+        .delete(ID_URL)
+        .then()
+        .statusCode(HttpStatus.SC_PRECONDITION_FAILED)
+        .body(MESSAGE_KEY, is(MessageKeys.ERROR_WIDGET_VERSION_MISMATCH));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
   @Test
   public void shouldReturnUnauthorizedForDeleteWidgetEndpointIfUserIsNotAuthorized() {
     restAssured
@@ -316,7 +1180,6 @@ public class WidgetControllerIntegrationTest extends BaseWebIntegrationTest {
 
   @Test
   public void shouldRetrieveAuditLogs() {
-    given(widgetRepository.existsById(widgetDto.getId())).willReturn(true);
     willReturn(Lists.newArrayList(change)).given(javers).findChanges(any(JqlQuery.class));
 
     restAssured
@@ -338,12 +1201,12 @@ public class WidgetControllerIntegrationTest extends BaseWebIntegrationTest {
         .body("left", hasItem(change.getLeft().toString()))
         .body("right", hasItem(change.getRight().toString()));
 
+    verify(widgetRepository, never()).existsById(any(UUID.class));
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
   @Test
   public void shouldRetrieveAuditLogsWithParameters() {
-    given(widgetRepository.existsById(widgetDto.getId())).willReturn(true);
     willReturn(Lists.newArrayList(change)).given(javers).findChanges(any(JqlQuery.class));
 
     restAssured
@@ -370,9 +1233,38 @@ public class WidgetControllerIntegrationTest extends BaseWebIntegrationTest {
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
+  @Test
+  public void shouldRetrieveAuditLogsOfDeletedWidget() {
+    given(widgetRepository.existsById(widgetDto.getId())).willReturn(false);
+    willReturn(Lists.newArrayList(change)).given(javers).findChanges(any(JqlQuery.class));
+    // the rebuilt id filter no longer contains the deleted widget
+    given(widgetRepository.streamAllIds()).willReturn(Stream.empty());
+    ReflectionTestUtils.setField(widgetIdFilter, "enabled", true);
+
+    try {
+      widgetIdFilter.rebuild();
+
+      restAssured
+          .given()
+          .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+          .pathParam(ID, widgetDto.getId().toString())
+          .when()
+          .get(AUDIT_LOG_URL)
+          .then()
+          .statusCode(HttpStatus.SC_OK)
+          .body("", hasSize(1));
+    } finally {
+      ReflectionTestUtils.setField(widgetIdFilter, "enabled", false);
+      ReflectionTestUtils.setField(widgetIdFilter, "filter", null);
+    }
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
   @Test
   public void shouldReturnNotFoundMessageIfWidgetDoesNotExistForAuditLogEndpoint() {
     given(widgetRepository.existsById(widgetDto.getId())).willReturn(false);
+    willReturn(Lists.newArrayList()).given(javers).findChanges(any(JqlQuery.class));
 
     restAssured
         .given()
@@ -383,6 +1275,7 @@ public class WidgetControllerIntegrationTest extends BaseWebIntegrationTest {
         .then()
         .statusCode(HttpStatus.SC_NOT_FOUND);
 
+    verify(widgetRepository).existsById(widgetDto.getId());
     assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
   }
 
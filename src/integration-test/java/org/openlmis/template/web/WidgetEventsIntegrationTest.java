@@ -0,0 +1,174 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.web;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+
+import guru.nidi.ramltester.junit.RamlMatchers;
+import org.apache.http.HttpStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.template.WidgetDataBuilder;
+import org.openlmis.template.domain.Widget;
+import org.openlmis.template.event.WidgetEventBroadcaster;
+import org.openlmis.template.web.widget.WidgetController;
+import org.openlmis.template.web.widget.WidgetDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = {"widget.events.timeout=2000", "widget.events.bufferSize=2"})
+public class WidgetEventsIntegrationTest extends BaseWebIntegrationTest {
+
+  private static final String EVENTS_URL = WidgetController.RESOURCE_PATH + "/events";
+  private static final String LAST_EVENT_ID = "Last-Event-ID";
+  private static final String MAX_ID_SQL =
+      "SELECT COALESCE(MAX(eventid), 0) FROM template.widget_events";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private WidgetEventBroadcaster widgetEventBroadcaster;
+
+  private WidgetDto widgetDto = WidgetDto.newInstance(new WidgetDataBuilder().build());
+  private long lastEventId;
+
+  @Before
+  public void setUp() {
+    given(widgetRepository.saveAndFlush(any(Widget.class))).willAnswer(new SaveAnswer<>());
+
+    lastEventId = jdbcTemplate.queryForObject(MAX_ID_SQL, Long.class);
+  }
+
+  @Test
+  public void shouldReplayEventsAfterLastEventId() {
+    String id = restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .body(widgetDto)
+        .when()
+        .post(WidgetController.RESOURCE_PATH)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED)
+        .extract()
+        .path("id");
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
+        .header(LAST_EVENT_ID, lastEventId)
+        .when()
+        .get(EVENTS_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(containsString("event:CREATED"))
+        .body(containsString(id));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReplayAllEventsIfMoreThanBufferSizeWereMissed() throws InterruptedException {
+    String first = createWidget();
+    String second = createWidget();
+    String third = createWidget();
+    waitForBroadcast();
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
+        .header(LAST_EVENT_ID, lastEventId)
+        .when()
+        .get(EVENTS_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(containsString(first))
+        .body(containsString(second))
+        .body(containsString(third))
+        .body(not(containsString("event:RESET")));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldResetClientThatMissedCompactedEvents() throws InterruptedException {
+    String id = createWidget();
+    long eventId = waitForBroadcast();
+    jdbcTemplate.update("DELETE FROM template.widget_events WHERE eventid <= ?", eventId);
+
+    restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
+        .header(LAST_EVENT_ID, lastEventId)
+        .when()
+        .get(EVENTS_URL)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(containsString("event:RESET"))
+        .body(not(containsString(id)));
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  @Test
+  public void shouldReturnUnauthorizedForEventsEndpointIfUserIsNotAuthorized() {
+    restAssured
+        .given()
+        .when()
+        .get(EVENTS_URL)
+        .then()
+        .statusCode(HttpStatus.SC_UNAUTHORIZED);
+
+    assertThat(RAML_ASSERT_MESSAGE, restAssured.getLastReport(), RamlMatchers.hasNoViolations());
+  }
+
+  private String createWidget() {
+    return restAssured
+        .given()
+        .header(HttpHeaders.AUTHORIZATION, getTokenHeader())
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .body(WidgetDto.newInstance(new WidgetDataBuilder().build()))
+        .when()
+        .post(WidgetController.RESOURCE_PATH)
+        .then()
+        .statusCode(HttpStatus.SC_CREATED)
+        .extract()
+        .path("id");
+  }
+
+  // so the events are replayed rather than broadcast to the new subscriber
+  private long waitForBroadcast() throws InterruptedException {
+    long eventId = jdbcTemplate.queryForObject(MAX_ID_SQL, Long.class);
+    for (int attempt = 0; attempt < 50 && widgetEventBroadcaster.getPosition() < eventId;
+        ++attempt) {
+      Thread.sleep(100);
+    }
+    return eventId;
+  }
+
+}
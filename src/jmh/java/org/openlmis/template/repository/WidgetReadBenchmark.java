@@ -0,0 +1,137 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.repository;
+
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openlmis.template.Application;
+import org.openlmis.template.domain.Widget;
+import org.openlmis.template.web.widget.WidgetDto;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Compares loading a page of 10000 widgets (and converting them to DTOs, as the controller does)
+ * in a read-write transaction with loading it read-only in a read-only transaction. In the
+ * latter, Hibernate keeps no snapshots of the widgets and does not dirty check them at commit,
+ * as the flush mode is MANUAL. Run it with {@code gradle jmh -PjmhInclude=WidgetReadBenchmark}
+ * against the database configured by the DATABASE_URL, POSTGRES_USER and POSTGRES_PASSWORD
+ * environment variables; the gc profiler shows the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WidgetReadBenchmark {
+
+  private static final int PAGE_SIZE = 10_000;
+  private static final String CODE_PREFIX = "widget-read-benchmark-";
+
+  private static final String QUERY = "SELECT w FROM Widget w WHERE w.code LIKE :prefix";
+  private static final String INSERT_SQL =
+      "INSERT INTO template.widget (id, name, code) VALUES (?, ?, ?)";
+  private static final String DELETE_SQL = "DELETE FROM template.widget WHERE code LIKE ?";
+
+  private ConfigurableApplicationContext context;
+  private EntityManager entityManager;
+  private JdbcTemplate jdbcTemplate;
+  private TransactionTemplate readWriteTransaction;
+  private TransactionTemplate readOnlyTransaction;
+
+  /**
+   * Starts the application without the web server and inserts the widgets.
+   */
+  @Setup
+  public void setUp() {
+    context = new SpringApplicationBuilder(Application.class)
+        .web(WebApplicationType.NONE)
+        .run();
+
+    entityManager = SharedEntityManagerCreator
+        .createSharedEntityManager(context.getBean(EntityManagerFactory.class));
+    jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+    PlatformTransactionManager transactionManager =
+        context.getBean(PlatformTransactionManager.class);
+    readWriteTransaction = new TransactionTemplate(transactionManager);
+    readOnlyTransaction = new TransactionTemplate(transactionManager);
+    readOnlyTransaction.setReadOnly(true);
+
+    jdbcTemplate.update(DELETE_SQL, CODE_PREFIX + "%");
+    jdbcTemplate.batchUpdate(INSERT_SQL, IntStream
+        .range(0, PAGE_SIZE)
+        .mapToObj(i -> new Object[]{UUID.randomUUID(), "Widget " + i, CODE_PREFIX + i})
+        .collect(Collectors.toList()));
+  }
+
+  /**
+   * Deletes the widgets and stops the application.
+   */
+  @TearDown
+  public void tearDown() {
+    jdbcTemplate.update(DELETE_SQL, CODE_PREFIX + "%");
+    context.close();
+  }
+
+  @Benchmark
+  public List<WidgetDto> readWrite() {
+    return readWriteTransaction.execute(status -> loadPage(false));
+  }
+
+  @Benchmark
+  public List<WidgetDto> readOnly() {
+    return readOnlyTransaction.execute(status -> loadPage(true));
+  }
+
+  private List<WidgetDto> loadPage(boolean readOnlyHint) {
+    TypedQuery<Widget> query = entityManager
+        .createQuery(QUERY, Widget.class)
+        .setParameter("prefix", CODE_PREFIX + "%")
+        .setMaxResults(PAGE_SIZE);
+
+    if (readOnlyHint) {
+      query.setHint(HINT_READONLY, true);
+    }
+
+    return query
+        .getResultList()
+        .stream()
+        .map(WidgetDto::newInstance)
+        .collect(Collectors.toList());
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Compares the lazy {@link Pagination#getPage(Iterable, Pageable)} with the previous
+ * implementation that copied the whole iterable into a list first. Run it with
+ * {@code gradle jmh -PjmhInclude=PaginationBenchmark}; the gc profiler shows the allocation
+ * rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PaginationBenchmark {
+
+  @Param({"1000", "100000"})
+  private int sourceSize;
+
+  @Param({"0", "10"})
+  private int pageNumber;
+
+  private Set<Integer> collection;
+  private Iterable<Integer> iterable;
+  private Pageable pageable;
+
+  /**
+   * Prepares the sources. The plain iterable is not a collection, so its size is unknown.
+   */
+  @Setup
+  public void setUp() {
+    List<Integer> source = IntStream
+        .range(0, sourceSize)
+        .boxed()
+        .collect(Collectors.toList());
+
+    collection = new HashSet<>(source);
+    iterable = source::iterator;
+    pageable = PageRequest.of(pageNumber, 20);
+  }
+
+  @Benchmark
+  public Page<Integer> copyingCollection() {
+    return copyingGetPage(collection, pageable);
+  }
+
+  @Benchmark
+  public Page<Integer> lazyCollection() {
+    return Pagination.getPage(collection, pageable);
+  }
+
+  @Benchmark
+  public Page<Integer> copyingIterable() {
+    return copyingGetPage(iterable, pageable);
+  }
+
+  @Benchmark
+  public Page<Integer> lazyIterable() {
+    return Pagination.getPage(iterable, pageable);
+  }
+
+  @Benchmark
+  public Page<Integer> lazyStream() {
+    return Pagination.getPage(collection.stream(), pageable);
+  }
+
+  // the implementation of Pagination.getPage(Iterable, Pageable) before it was made lazy
+  private static <T> Page<T> copyingGetPage(Iterable<T> data, Pageable pageable) {
+    List<T> resultList = new ArrayList<>();
+    data.forEach(resultList::add);
+    return Pagination.getPage(resultList, pageable);
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.web.widget;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openlmis.template.Application;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Measures the latency of {@code GET /api/widgets/{id}} (the controller method with its
+ * transaction and the repository lookup, without HTTP and authentication) for different
+ * values of the pgjdbc prepareThreshold. With 0 every lookup is parsed and planned by the
+ * database again; with a positive value the lookup becomes a server-side prepared statement
+ * after that many executions on a connection. Run it with
+ * {@code gradle jmh -PjmhInclude=WidgetLookupBenchmark} against the database configured by the
+ * DATABASE_URL, POSTGRES_USER and POSTGRES_PASSWORD environment variables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WidgetLookupBenchmark {
+
+  private static final String INSERT_SQL =
+      "INSERT INTO template.widget (id, name, code) VALUES (?, ?, ?)";
+  private static final String DELETE_SQL = "DELETE FROM template.widget WHERE id = ?";
+
+  @Param({"0", "1", "5"})
+  private int prepareThreshold;
+
+  private ConfigurableApplicationContext context;
+  private JdbcTemplate jdbcTemplate;
+  private WidgetController widgetController;
+  private UUID id = UUID.randomUUID();
+
+  /**
+   * Starts the application with the given threshold, without the web server, and inserts the
+   * widget to look up.
+   */
+  @Setup
+  public void setUp() {
+    context = new SpringApplicationBuilder(Application.class)
+        .web(WebApplicationType.NONE)
+        .run("--spring.datasource.hikari.data-source-properties.prepareThreshold="
+            + prepareThreshold);
+
+    jdbcTemplate = context.getBean(JdbcTemplate.class);
+    widgetController = context.getBean(WidgetController.class);
+
+    jdbcTemplate.update(INSERT_SQL, id, "Benchmarked widget", "widget-lookup-benchmark");
+  }
+
+  /**
+   * Deletes the widget and stops the application.
+   */
+  @TearDown
+  public void tearDown() {
+    jdbcTemplate.update(DELETE_SQL, id);
+    context.close();
+  }
+
+  @Benchmark
+  public ResponseEntity<WidgetDto> getSpecifiedWidget() {
+    return widgetController.getSpecifiedWidget(id, null);
+  }
+
+}
@@ -15,12 +15,21 @@
 
 package org.openlmis.template;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import java.util.List;
 import org.openlmis.template.util.Pagination;
+import org.openlmis.template.web.widget.WidgetProtobufHttpMessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
@@ -49,10 +58,51 @@ public class CustomWebMvcConfigurerAdapter implements WebMvcConfigurer {
   @Override
   public void addArgumentResolvers(List<HandlerMethodArgumentResolver> argumentResolvers) {
     PageableHandlerMethodArgumentResolver resolver = new PageableHandlerMethodArgumentResolver();
+    // not limited here, controllers stream pages bigger than pagination.maxPageSize instead
     resolver.setMaxPageSize(Integer.MAX_VALUE);
     resolver.setFallbackPageable(
         PageRequest.of(Pagination.DEFAULT_PAGE_NUMBER, Pagination.NO_PAGINATION));
 
     argumentResolvers.add(resolver);
   }
+
+  /**
+   * Allows clients to exchange resources as Smile (binary JSON) by sending
+   * {@code application/x-jackson-smile} in the Accept and/or Content-Type headers.
+   * The mapper is configured in the same way as the JSON one.
+   */
+  @Bean
+  public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(
+      Jackson2ObjectMapperBuilder builder) {
+    return new MappingJackson2SmileHttpMessageConverter(
+        createBinaryObjectMapper(builder, new ObjectMapper(new SmileFactory())));
+  }
+
+  /**
+   * Allows clients to exchange resources as CBOR by sending {@code application/cbor}
+   * in the Accept and/or Content-Type headers.
+   */
+  @Bean
+  public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(
+      Jackson2ObjectMapperBuilder builder) {
+    return new MappingJackson2CborHttpMessageConverter(
+        createBinaryObjectMapper(builder, new ObjectMapper(new CBORFactory())));
+  }
+
+  /**
+   * Allows clients to exchange widgets as Protocol Buffers (see widget.proto) by sending
+   * {@code application/x-protobuf} in the Accept and/or Content-Type headers.
+   */
+  @Bean
+  public WidgetProtobufHttpMessageConverter widgetProtobufHttpMessageConverter() {
+    return new WidgetProtobufHttpMessageConverter();
+  }
+
+  private ObjectMapper createBinaryObjectMapper(Jackson2ObjectMapperBuilder builder,
+      ObjectMapper mapper) {
+    builder.configure(mapper);
+    // indentation makes no sense for binary formats
+    mapper.disable(SerializationFeature.INDENT_OUTPUT);
+    return mapper;
+  }
 }
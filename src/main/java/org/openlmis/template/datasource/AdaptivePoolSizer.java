@@ -0,0 +1,195 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.datasource;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically looks at the statistics of each connection pool and, if enabled
+ * ({@code datasource.pool.adaptive.enabled}), grows or shrinks its maximum size within the
+ * configured bounds:
+ * <ul>
+ *   <li>it grows when requests had to wait for a connection (longer than the target acquire time
+ *   on average, or until they timed out), unless statements take longer than the maximum
+ *   statement time on average, as the database itself is then the bottleneck and more
+ *   connections would only add to its load;</li>
+ *   <li>it shrinks when requests did not have to wait and fewer connections than the smaller
+ *   size were in use at the same time.</li>
+ * </ul>
+ * Idle connections above the lower bound are closed by the pool after its idle timeout.
+ *
+ * <p>The statement time ({@link StatementLatencyTracker}) is used rather than the time
+ * connections are held, as a connection held to stream a large response, or by a slow client,
+ * does not mean the database is slow.
+ */
+@Component
+public class AdaptivePoolSizer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdaptivePoolSizer.class);
+
+  private static final int MAX_RESIZES = 20;
+
+  @Autowired
+  private ConnectionPools connectionPools;
+
+  @Autowired
+  private StatementLatencyTracker statementLatencyTracker;
+
+  @Value("${datasource.pool.adaptive.enabled}")
+  private boolean enabled;
+
+  @Value("${datasource.pool.adaptive.minSize}")
+  private int minSize;
+
+  @Value("${datasource.pool.adaptive.maxSize}")
+  private int maxSize;
+
+  @Value("${datasource.pool.adaptive.step}")
+  private int step;
+
+  @Value("${datasource.pool.adaptive.targetAcquireTime}")
+  private double targetAcquireTime;
+
+  @Value("${datasource.pool.adaptive.maxStatementTime}")
+  private double maxStatementTime;
+
+  private final Map<String, PoolWindow> lastWindows = new ConcurrentHashMap<>();
+  private final Map<String, Deque<ConnectionPoolReport.Resize>> resizes =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Starts a new statistics window for each pool and, if enabled, resizes the pool based on the
+   * last one. The windows are kept even when resizing is disabled, as they are reported by
+   * {@link #getReports()}; that only takes reading a few counters per pool.
+   */
+  @Scheduled(fixedDelayString = "${datasource.pool.adaptive.interval}")
+  public void check() {
+    double averageStatementMillis = statementLatencyTracker.nextAverageMillis();
+
+    connectionPools.getPools().forEach((dataSource, tracker) -> {
+      PoolWindow window = tracker.nextWindow(averageStatementMillis);
+      lastWindows.put(dataSource.getPoolName(), window);
+
+      if (enabled) {
+        resize(dataSource, window);
+      }
+    });
+  }
+
+  /**
+   * Returns the state of every started connection pool.
+   */
+  public List<ConnectionPoolReport> getReports() {
+    List<ConnectionPoolReport> reports = new ArrayList<>();
+
+    connectionPools.getPools().keySet().forEach(dataSource -> {
+      HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+      HikariConfigMXBean config = dataSource.getHikariConfigMXBean();
+      String poolName = dataSource.getPoolName();
+
+      reports.add(new ConnectionPoolReport(poolName, pool.getActiveConnections(),
+          pool.getIdleConnections(), pool.getThreadsAwaitingConnection(),
+          pool.getTotalConnections(), config.getMinimumIdle(), config.getMaximumPoolSize(),
+          enabled, lastWindows.get(poolName), getResizes(poolName)));
+    });
+
+    return reports;
+  }
+
+  /**
+   * Returns the new maximum size of a pool with the given size and statistics, and the reason
+   * for the change; or null if the size should not change.
+   */
+  ConnectionPoolReport.Resize getResize(int size, PoolWindow window) {
+    boolean waited = window.getTimeouts() > 0
+        || window.getAverageAcquireMillis() > targetAcquireTime;
+
+    if (waited && size < maxSize) {
+      if (window.getAverageStatementMillis() > maxStatementTime) {
+        LOGGER.debug("Not growing the connection pool, the database is slow");
+        return null;
+      }
+
+      return new ConnectionPoolReport.Resize(ZonedDateTime.now(), size,
+          Math.min(maxSize, size + step), String.format(
+              "waited %.1f ms on average for a connection, %d timeouts",
+              window.getAverageAcquireMillis(), window.getTimeouts()));
+    }
+
+    int smaller = Math.max(minSize, size - step);
+    if (!waited && smaller < size && window.getPeakInUse() < smaller) {
+      return new ConnectionPoolReport.Resize(ZonedDateTime.now(), size, smaller,
+          String.format("at most %d connections were in use", window.getPeakInUse()));
+    }
+
+    return null;
+  }
+
+  private void resize(HikariDataSource dataSource, PoolWindow window) {
+    HikariConfigMXBean config = dataSource.getHikariConfigMXBean();
+
+    // otherwise the pool keeps all connections open, however small it is made
+    if (config.getMinimumIdle() > minSize) {
+      config.setMinimumIdle(minSize);
+    }
+
+    int size = config.getMaximumPoolSize();
+    ConnectionPoolReport.Resize resize = getResize(size, window);
+
+    if (null != resize) {
+      LOGGER.info("Resizing connection pool {} from {} to {}: {}", dataSource.getPoolName(),
+          resize.getFrom(), resize.getTo(), resize.getReason());
+      config.setMaximumPoolSize(resize.getTo());
+
+      Deque<ConnectionPoolReport.Resize> recent = resizes
+          .computeIfAbsent(dataSource.getPoolName(), name -> new ArrayDeque<>());
+      synchronized (recent) {
+        recent.addFirst(resize);
+        if (recent.size() > MAX_RESIZES) {
+          recent.removeLast();
+        }
+      }
+    }
+  }
+
+  private List<ConnectionPoolReport.Resize> getResizes(String poolName) {
+    Deque<ConnectionPoolReport.Resize> recent = resizes.get(poolName);
+    if (null == recent) {
+      return new ArrayList<>();
+    }
+
+    synchronized (recent) {
+      return new ArrayList<>(recent);
+    }
+  }
+
+}
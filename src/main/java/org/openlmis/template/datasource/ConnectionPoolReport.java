@@ -0,0 +1,51 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.datasource;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The state of a connection pool and the recent decisions of the {@link AdaptivePoolSizer}.
+ */
+@Getter
+@AllArgsConstructor
+public final class ConnectionPoolReport {
+
+  private final String poolName;
+  private final int activeConnections;
+  private final int idleConnections;
+  private final int pendingThreads;
+  private final int totalConnections;
+  private final int minimumIdle;
+  private final int maximumPoolSize;
+  private final boolean adaptive;
+  private final PoolWindow lastWindow;
+  private final List<Resize> resizes;
+
+  @Getter
+  @AllArgsConstructor
+  public static final class Resize {
+    private final ZonedDateTime time;
+    private final int from;
+    private final int to;
+    private final String reason;
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Metrics;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps track of the Hikari connection pools of the service. Each pool reports its active, idle
+ * and pending connections and its connection acquire, usage and timeout statistics as metrics
+ * (named hikaricp.connections.*, tagged with the pool name), and collects the statistics used by
+ * {@link AdaptivePoolSizer}.
+ */
+@Component
+public class ConnectionPools implements BeanPostProcessor {
+
+  private final Map<HikariDataSource, PoolStatsTracker> pools = new ConcurrentHashMap<>();
+
+  // before initialization, as other post processors may wrap the data source afterwards
+  @Override
+  public Object postProcessBeforeInitialization(Object bean, String beanName) {
+    if (bean instanceof HikariDataSource) {
+      register((HikariDataSource) bean);
+    }
+    return bean;
+  }
+
+  /**
+   * Returns the pools that have been started (by the first connection request), with their
+   * statistics trackers.
+   */
+  Map<HikariDataSource, PoolStatsTracker> getPools() {
+    return Collections.unmodifiableMap(pools);
+  }
+
+  private void register(HikariDataSource dataSource) {
+    // the tracker can only be set before the pool is started by the first connection request
+    if (null != dataSource.getHikariPoolMXBean() || null != dataSource.getMetricRegistry()
+        || null != dataSource.getMetricsTrackerFactory()) {
+      return;
+    }
+
+    MicrometerMetricsTrackerFactory metrics =
+        new MicrometerMetricsTrackerFactory(Metrics.globalRegistry);
+
+    dataSource.setMetricsTrackerFactory((poolName, poolStats) -> {
+      PoolStatsTracker tracker = new PoolStatsTracker(metrics.create(poolName, poolStats));
+      pools.put(dataSource, tracker);
+      return tracker;
+    });
+  }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.datasource;
+
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint ({@code /actuator/connectionPools}) that reports the state of the database
+ * connection pools. Like the metrics, it is not routed by nginx and requires an access token,
+ * so it is only available to the operators of the deployment.
+ */
+@Component
+@Endpoint(id = "connectionPools")
+public class ConnectionPoolsEndpoint {
+
+  @Autowired
+  private AdaptivePoolSizer adaptivePoolSizer;
+
+  /**
+   * Retrieves the current connections of each pool, its statistics over the last check interval
+   * and the recent changes of its size.
+   */
+  @ReadOperation
+  public List<ConnectionPoolReport> connectionPools() {
+    return adaptivePoolSizer.getReports();
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.datasource;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the connection acquire and usage times of a Hikari pool over a window of time, for
+ * {@link AdaptivePoolSizer}, and passes them on to the given tracker, which records them as
+ * metrics.
+ */
+class PoolStatsTracker implements IMetricsTracker {
+
+  private final IMetricsTracker delegate;
+
+  private final LongAdder acquisitions = new LongAdder();
+  private final LongAdder acquireNanos = new LongAdder();
+  private final LongAdder usages = new LongAdder();
+  private final LongAdder usageMillis = new LongAdder();
+  private final LongAdder timeouts = new LongAdder();
+  private final AtomicInteger inUse = new AtomicInteger();
+  private final AtomicInteger peakInUse = new AtomicInteger();
+
+  PoolStatsTracker(IMetricsTracker delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+    delegate.recordConnectionCreatedMillis(connectionCreatedMillis);
+  }
+
+  @Override
+  public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+    acquisitions.increment();
+    acquireNanos.add(elapsedAcquiredNanos);
+    peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+    delegate.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+  }
+
+  @Override
+  public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+    usages.increment();
+    usageMillis.add(elapsedBorrowedMillis);
+    inUse.decrementAndGet();
+    delegate.recordConnectionUsageMillis(elapsedBorrowedMillis);
+  }
+
+  @Override
+  public void recordConnectionTimeout() {
+    timeouts.increment();
+    delegate.recordConnectionTimeout();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  /**
+   * Returns the statistics collected since the previous call, with the given average statement
+   * execution time over the same period, and starts a new window.
+   */
+  PoolWindow nextWindow(double averageStatementMillis) {
+    long acquired = acquisitions.sumThenReset();
+    long acquiredNanos = acquireNanos.sumThenReset();
+    long used = usages.sumThenReset();
+    long usedMillis = usageMillis.sumThenReset();
+
+    return new PoolWindow(acquired,
+        0 == acquired ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(acquiredNanos) / 1000 / acquired,
+        0 == used ? 0 : (double) usedMillis / used,
+        averageStatementMillis,
+        timeouts.sumThenReset(),
+        peakInUse.getAndSet(inUse.get()));
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.HashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Sends the work of read-only transactions ({@code @Transactional(readOnly = true)}) to a
+ * streaming replica of the database, to take load off the primary. Everything else, including
+ * Flyway migrations and all writes, still uses the primary.
+ *
+ * <p>This mode is opt-in ({@code datasource.replica.enabled}). Reads from the replica may not
+ * see changes committed on the primary in the last {@code datasource.replica.maxLag}
+ * milliseconds; when the replica lags further behind or is down, reads go to the primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "datasource.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfiguration {
+
+  /**
+   * Creates the connection pool of the primary, configured like the default one.
+   */
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+    HikariDataSource dataSource = properties
+        .initializeDataSourceBuilder()
+        .type(HikariDataSource.class)
+        .build();
+    dataSource.setPoolName("primary");
+    return dataSource;
+  }
+
+  /**
+   * Creates the connection pool of the replica.
+   */
+  @Bean
+  @ConfigurationProperties("datasource.replica.hikari")
+  public HikariDataSource replicaDataSource(DataSourceProperties properties,
+      @Value("${datasource.replica.url}") String url,
+      @Value("${datasource.replica.username}") String username,
+      @Value("${datasource.replica.password}") String password) {
+    HikariDataSource dataSource = properties
+        .initializeDataSourceBuilder()
+        .type(HikariDataSource.class)
+        .url(url)
+        .username(username)
+        .password(password)
+        .build();
+    dataSource.setPoolName("replica");
+    dataSource.setReadOnly(true);
+    return dataSource;
+  }
+
+  /**
+   * Creates the data source that routes read-only transactions to the replica. Until the first
+   * lag check, and when no check has been made for three check intervals, everything goes to
+   * the primary.
+   */
+  @Bean
+  public ReplicaRoutingDataSource replicaRoutingDataSource(
+      @Qualifier("primaryDataSource") DataSource primaryDataSource,
+      @Qualifier("replicaDataSource") DataSource replicaDataSource,
+      @Value("${datasource.replica.checkInterval}") long checkInterval) {
+    Map<Object, Object> targets = new HashMap<>();
+    targets.put(ReplicaRoutingDataSource.Target.PRIMARY, primaryDataSource);
+    targets.put(ReplicaRoutingDataSource.Target.REPLICA, replicaDataSource);
+
+    ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(3 * checkInterval);
+    routingDataSource.setTargetDataSources(targets);
+    routingDataSource.setDefaultTargetDataSource(primaryDataSource);
+    return routingDataSource;
+  }
+
+  /**
+   * Creates the data source used by the application, which only picks the target data source
+   * when the first statement is executed, once the transaction flags are known.
+   */
+  @Bean
+  @Primary
+  public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+    return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+  }
+
+  @Bean
+  public ReplicaLagMonitor replicaLagMonitor(
+      @Qualifier("replicaDataSource") DataSource replicaDataSource,
+      ReplicaRoutingDataSource replicaRoutingDataSource,
+      @Value("${datasource.replica.maxLag}") long maxLag) {
+    return new ReplicaLagMonitor(replicaDataSource, replicaRoutingDataSource, maxLag);
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.datasource;
+
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Periodically measures how far the replica lags behind the primary and stops routing reads to
+ * it while the lag exceeds {@code datasource.replica.maxLag} milliseconds, the replica does not
+ * stream changes from the primary or it cannot be reached. Reads go to the primary in the
+ * meantime.
+ */
+public class ReplicaLagMonitor {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+  // the WAL functions were renamed in Postgres 10
+  private static final int POSTGRES_10 = 100000;
+  private static final String VERSION_SQL = "SELECT current_setting('server_version_num')::int";
+
+  // a replica that has replayed everything it received is up to date, however old its last
+  // replayed transaction is (the primary may just be idle), unless it no longer receives
+  // anything; the lag of such a replica is unknown (null)
+  private static final String LAG_SQL = "SELECT CASE"
+      + " WHEN NOT pg_is_in_recovery() THEN 0"
+      + " WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver) THEN NULL"
+      + " WHEN pg_last_%1$s_receive_%2$s() = pg_last_%1$s_replay_%2$s() THEN 0"
+      + " ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0)"
+      + " END";
+
+  private final JdbcTemplate replica;
+  private final ReplicaRoutingDataSource routingDataSource;
+  private final long maxLag;
+
+  private String lagSql;
+  private Boolean usable;
+
+  /**
+   * Creates a new monitor of the given replica, which updates the given routing data source.
+   */
+  public ReplicaLagMonitor(DataSource replica, ReplicaRoutingDataSource routingDataSource,
+      long maxLag) {
+    this.replica = new JdbcTemplate(replica);
+    this.routingDataSource = routingDataSource;
+    this.maxLag = maxLag;
+  }
+
+  /**
+   * Measures the lag of the replica and enables or disables routing to it accordingly. Changes
+   * are logged, including a replica that is not usable from the start.
+   */
+  @Scheduled(fixedDelayString = "${datasource.replica.checkInterval}")
+  public synchronized void check() {
+    boolean nowUsable;
+    try {
+      Double lag = replica.queryForObject(getLagSql(), Double.class);
+      nowUsable = null != lag && lag <= maxLag;
+
+      if (nowUsable || Boolean.FALSE.equals(usable)) {
+        LOGGER.trace("Replica lags {} ms behind the primary", lag);
+      } else if (null == lag) {
+        LOGGER.warn("Replica does not stream changes from the primary, reading from the primary");
+      } else {
+        LOGGER.warn("Replica lags {} ms behind the primary, reading from the primary", lag);
+      }
+    } catch (DataAccessException ex) {
+      nowUsable = false;
+
+      if (!Boolean.FALSE.equals(usable)) {
+        LOGGER.warn("Replica is not available, reading from the primary", ex);
+      }
+    }
+
+    if (nowUsable && !Boolean.TRUE.equals(usable)) {
+      LOGGER.info("Reading from the replica");
+    }
+    usable = nowUsable;
+    routingDataSource.setReplicaUsable(nowUsable);
+  }
+
+  private String getLagSql() {
+    if (null == lagSql) {
+      Integer version = replica.queryForObject(VERSION_SQL, Integer.class);
+      lagSql = null != version && version >= POSTGRES_10
+          ? String.format(LAG_SQL, "wal", "lsn")
+          : String.format(LAG_SQL, "xlog", "location");
+    }
+    return lagSql;
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Routes the connections of read-only transactions to the replica, as long as it is usable
+ * (reachable and not lagging too far behind), and all other connections to the primary. A
+ * verdict that the replica is usable only holds for the given time, so the replica stops being
+ * used if the checks stop (e.g. when the scheduler is stuck).
+ *
+ * <p>The transaction flags are only known once the transaction has started, so this data source
+ * must be wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy},
+ * which defers fetching the connection until the first statement.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+  public enum Target {
+    PRIMARY, REPLICA
+  }
+
+  private final long verdictTimeout;
+
+  // time (in milliseconds since the epoch) until which the replica counts as usable
+  private volatile long usableUntil;
+
+  /**
+   * Creates a new data source which trusts each check of the replica for the given number of
+   * milliseconds.
+   */
+  public ReplicaRoutingDataSource(long verdictTimeout) {
+    this.verdictTimeout = verdictTimeout;
+  }
+
+  public boolean isReplicaUsable() {
+    return System.currentTimeMillis() < usableUntil;
+  }
+
+  /**
+   * Records the result of a check of the replica, made just now.
+   */
+  public void setReplicaUsable(boolean replicaUsable) {
+    this.usableUntil = replicaUsable ? System.currentTimeMillis() + verdictTimeout : 0;
+  }
+
+  @Override
+  protected Target determineCurrentLookupKey() {
+    return isReplicaUsable() && TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+        ? Target.REPLICA
+        : Target.PRIMARY;
+  }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.datasource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Collects the execution times of the SQL statements of the service over a window of time, for
+ * {@link AdaptivePoolSizer}. Unlike the time a connection is held, which includes the work done
+ * between statements and the time spent streaming results to clients, this is how long the
+ * database took to answer. The times are recorded by the data source proxy, see
+ * {@link org.openlmis.template.metrics.SqlStatisticsDataSourcePostProcessor}.
+ */
+@Component
+public class StatementLatencyTracker {
+
+  private final LongAdder statements = new LongAdder();
+  private final LongAdder nanos = new LongAdder();
+
+  /**
+   * Records a statement that took the given number of nanoseconds to execute.
+   */
+  public void record(long elapsedNanos) {
+    statements.increment();
+    nanos.add(elapsedNanos);
+  }
+
+  /**
+   * Returns the average execution time of the statements recorded since the previous call, in
+   * milliseconds, and starts a new window.
+   */
+  double nextAverageMillis() {
+    long executed = statements.sumThenReset();
+    long executedNanos = nanos.sumThenReset();
+
+    return 0 == executed
+        ? 0
+        : (double) TimeUnit.NANOSECONDS.toMicros(executedNanos) / 1000 / executed;
+  }
+
+}
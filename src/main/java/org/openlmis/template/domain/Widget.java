@@ -18,14 +18,17 @@ package org.openlmis.template.domain;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.DynamicUpdate;
 import org.javers.core.metamodel.annotation.TypeName;
 
 @Entity
+@DynamicUpdate
 @TypeName("Widget")
 @Table(name = "widget", schema = "template")
 @NoArgsConstructor
@@ -44,6 +47,12 @@ public class Widget extends BaseEntity {
   @Setter
   private String code;
 
+  @Version
+  @Column(nullable = false)
+  @Getter
+  @Setter
+  private Long version;
+
   /**
    * Creates new instance based on data from the importer.
    */
@@ -67,6 +76,7 @@ public class Widget extends BaseEntity {
     exporter.setId(getId());
     exporter.setName(name);
     exporter.setCode(code);
+    exporter.setVersion(version);
   }
 
 
@@ -76,6 +86,8 @@ public class Widget extends BaseEntity {
 
     void setCode(String code);
 
+    void setVersion(Long version);
+
   }
 
   public interface Importer extends BaseImporter {
@@ -17,13 +17,18 @@ package org.openlmis.template.errorhandling;
 
 import java.util.HashMap;
 import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
 import org.hibernate.exception.ConstraintViolationException;
 import org.openlmis.template.exception.NotFoundException;
+import org.openlmis.template.exception.PreconditionFailedException;
 import org.openlmis.template.exception.ValidationMessageException;
 import org.openlmis.template.i18n.MessageKeys;
 import org.openlmis.template.util.Message;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
@@ -49,6 +54,35 @@ public class GlobalErrorHandling extends AbstractErrorHandling {
     return getLocalizedMessage(ex);
   }
 
+  @ExceptionHandler(PreconditionFailedException.class)
+  @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+  @ResponseBody
+  public Message.LocalizedMessage handlePreconditionFailedException(
+      PreconditionFailedException ex) {
+    return getLocalizedMessage(ex);
+  }
+
+  /**
+   * Handles an update of an entity that has been modified since it was loaded (e.g. between
+   * reading and flushing a patched widget) and returns status 409 Conflict. If the request was
+   * conditional (If-Match), the version it was based on is no longer current, so it fails with
+   * 412 Precondition Failed like any other request whose version does not match.
+   */
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  @ResponseBody
+  public ResponseEntity<Message.LocalizedMessage> handleOptimisticLockingFailure(
+      OptimisticLockingFailureException ex, HttpServletRequest request) {
+    if (null != request.getHeader(HttpHeaders.IF_MATCH)) {
+      return ResponseEntity
+          .status(HttpStatus.PRECONDITION_FAILED)
+          .body(getLocalizedMessage(new Message(MessageKeys.ERROR_WIDGET_VERSION_MISMATCH)));
+    }
+
+    return ResponseEntity
+        .status(HttpStatus.CONFLICT)
+        .body(getLocalizedMessage(new Message(MessageKeys.ERROR_CONCURRENT_MODIFICATION)));
+  }
+
   /**
    * Handles Message exceptions and returns status 400 Bad Request.
    *
@@ -0,0 +1,75 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Appends relayed widget events to a file, one JSON object per line, and forces them to disk
+ * before the batch counts as published.
+ */
+@Component
+@ConditionalOnProperty(name = "widget.events.relay.sink", havingValue = "file")
+public class FileWidgetEventSink implements WidgetEventSink {
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${widget.events.relay.file}")
+  private String file;
+
+  @Override
+  public synchronized void publish(List<WidgetEvent> events) throws IOException {
+    StringBuilder lines = new StringBuilder();
+    for (WidgetEvent event : events) {
+      lines.append(toJson(event)).append('\n');
+    }
+
+    try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+    }
+  }
+
+  private String toJson(WidgetEvent event) throws IOException {
+    ObjectNode node = objectMapper.createObjectNode();
+    node.put("id", event.getId());
+    node.put("type", event.getType().name());
+    node.put("widgetId", event.getWidgetId().toString());
+    node.set("payload", objectMapper.readTree(event.getPayload()));
+
+    // the shared mapper indents its output, which would break the lines apart
+    return node.toString();
+  }
+
+}
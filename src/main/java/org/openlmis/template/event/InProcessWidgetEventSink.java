@@ -0,0 +1,41 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.event;
+
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes relayed widget events as application events, so they can be consumed in this
+ * service with {@code @EventListener} methods taking a {@link WidgetEvent}.
+ */
+@Component
+@ConditionalOnProperty(name = "widget.events.relay.sink", havingValue = "inProcess")
+public class InProcessWidgetEventSink implements WidgetEventSink {
+
+  @Autowired
+  private ApplicationEventPublisher eventPublisher;
+
+  @Override
+  public void publish(List<WidgetEvent> events) {
+    events.forEach(eventPublisher::publishEvent);
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.event;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * A client of the widget event stream with its own bounded buffer of events that have not been
+ * sent to it yet. Events are sent by a task on the given executor, so a slow client never
+ * blocks the delivery to the others; a client that falls more than the buffer size behind is
+ * disconnected and can resume with the Last-Event-ID header.
+ *
+ * <p>A resuming client first gets the events it has missed, read from the outbox a page at a
+ * time by the sending task, however many there are. Events broadcast in the meantime are
+ * buffered, so a replay that takes too long disconnects the client like a slow one.
+ */
+class Subscriber {
+
+  private final SseEmitter emitter;
+  private final int bufferSize;
+  private final Executor executor;
+  private final WidgetEventOutbox outbox;
+
+  // guarded by this
+  private final Deque<WidgetEvent> buffer = new ArrayDeque<>();
+  private boolean started;
+  private long received;
+  private long replayed;
+  private long replayUntil;
+  private boolean sending;
+  private boolean closed;
+
+  Subscriber(SseEmitter emitter, int bufferSize, Executor executor, WidgetEventOutbox outbox) {
+    this.emitter = emitter;
+    this.bufferSize = bufferSize;
+    this.executor = executor;
+    this.outbox = outbox;
+  }
+
+  SseEmitter getEmitter() {
+    return emitter;
+  }
+
+  /**
+   * Starts sending events, beginning with the stored ones after the first given id up to the
+   * second one, which the client has missed. Events offered before this call are sent after
+   * them, except the ones up to the first id, which the client has already received (from
+   * another node that was ahead of this one).
+   */
+  synchronized void start(long received, long replayUntil) {
+    this.received = received;
+    this.replayed = received;
+    this.replayUntil = replayUntil;
+    buffer.removeIf(event -> event.getId() <= received);
+
+    started = true;
+    scheduleSending();
+  }
+
+  /**
+   * Buffers the given event to be sent. Returns false if the buffer is full, in which case the
+   * subscriber has been closed.
+   */
+  synchronized boolean offer(WidgetEvent event) {
+    if (closed) {
+      return false;
+    }
+
+    if (event.getId() <= received) {
+      return true;
+    }
+
+    if (buffer.size() >= bufferSize) {
+      close();
+      emitter.completeWithError(new IllegalStateException("Widget event buffer overflow"));
+      return false;
+    }
+
+    buffer.addLast(event);
+    scheduleSending();
+    return true;
+  }
+
+  synchronized void close() {
+    closed = true;
+    buffer.clear();
+  }
+
+  private void scheduleSending() {
+    if (started && !sending && !closed && (replayed < replayUntil || !buffer.isEmpty())) {
+      sending = true;
+      executor.execute(this::send);
+    }
+  }
+
+  private void send() {
+    try {
+      for (long from = nextReplay(); from >= 0; from = nextReplay()) {
+        List<WidgetEvent> page = outbox.findAfter(from, replayUntil, bufferSize);
+        for (WidgetEvent event : page) {
+          send(event);
+        }
+
+        replayed(page.size() < bufferSize ? replayUntil : page.get(page.size() - 1).getId());
+      }
+
+      for (WidgetEvent event = next(); null != event; event = next()) {
+        send(event);
+      }
+    } catch (IOException | IllegalStateException ex) {
+      // the client is gone; the emitter completion callback removes this subscriber
+      close();
+    } catch (DataAccessException ex) {
+      close();
+      emitter.completeWithError(ex);
+    }
+  }
+
+  private void send(WidgetEvent event) throws IOException {
+    emitter.send(SseEmitter
+        .event()
+        .id(String.valueOf(event.getId()))
+        .name(event.getType().name())
+        .data(event.getPayload(), MediaType.APPLICATION_JSON));
+  }
+
+  // the id after which the next page of missed events starts, or -1 once all were sent
+  private synchronized long nextReplay() {
+    return closed || replayed >= replayUntil ? -1 : replayed;
+  }
+
+  private synchronized void replayed(long eventId) {
+    replayed = eventId;
+  }
+
+  private synchronized WidgetEvent next() {
+    WidgetEvent event = closed ? null : buffer.pollFirst();
+    sending = null != event;
+    return event;
+  }
+
+}
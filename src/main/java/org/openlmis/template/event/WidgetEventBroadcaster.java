@@ -0,0 +1,163 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.event;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Fans widget events out to the clients of the server-sent event stream of this node. Events
+ * are broadcast in id order, so a client that resumes after the last event it received gets
+ * exactly the events it has missed.
+ */
+@Component
+public class WidgetEventBroadcaster {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WidgetEventBroadcaster.class);
+
+  static final String RESET_EVENT = "RESET";
+
+  @Autowired
+  private WidgetEventOutbox outbox;
+
+  @Value("${widget.events.bufferSize}")
+  private int bufferSize;
+
+  @Value("${widget.events.timeout}")
+  private long timeout;
+
+  @Value("${widget.events.senderThreads}")
+  private int senderThreads;
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+  // id of the last event broadcast, guarded by this
+  private long position;
+
+  private ThreadPoolExecutor senders;
+
+  @PostConstruct
+  void init() {
+    // a subscriber queues at most one task at a time, so the queue is bounded by the number of
+    // subscribers
+    senders = new ThreadPoolExecutor(senderThreads, senderThreads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "widget-event-sender");
+          thread.setDaemon(true);
+          return thread;
+        });
+    senders.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Creates a new event stream. If the id of the last event received by the client is given,
+   * the stream starts with all events stored after it. If some of them have been deleted by the
+   * outbox compaction already, the stream only carries a {@value #RESET_EVENT} event and ends;
+   * the client should then resynchronize with the change feed.
+   */
+  public SseEmitter subscribe(Long lastEventId) {
+    SseEmitter emitter = new SseEmitter(timeout);
+    Subscriber subscriber = new Subscriber(emitter, bufferSize, senders, outbox);
+
+    Runnable remove = () -> {
+      subscriber.close();
+      subscribers.remove(subscriber);
+    };
+    emitter.onCompletion(remove);
+    emitter.onError(error -> remove.run());
+    emitter.onTimeout(emitter::complete);
+
+    // events up to the position are replayed, later ones are broadcast to the new subscriber
+    long until;
+    synchronized (this) {
+      subscribers.add(subscriber);
+      until = position;
+    }
+
+    if (null == lastEventId) {
+      subscriber.start(0, 0);
+    } else if (lastEventId < until && lastEventId < outbox.findFirstId(until + 1) - 1) {
+      // ids may also be missing because their transactions were rolled back, in which case
+      // the reset is not needed, but harmless
+      subscribers.remove(subscriber);
+      reset(emitter);
+      return emitter;
+    } else {
+      subscriber.start(lastEventId, until);
+    }
+
+    LOGGER.debug("Widget event subscriber added, {} in total", subscribers.size());
+    return emitter;
+  }
+
+  /**
+   * Returns the id up to which events have been broadcast.
+   */
+  public synchronized long getPosition() {
+    return position;
+  }
+
+  /**
+   * Sends the given events to every subscriber, in the given order. Afterwards, every event with
+   * an id up to the given position counts as broadcast, including ones that were never stored.
+   */
+  public synchronized void broadcast(List<WidgetEvent> events, long position) {
+    for (Subscriber subscriber : subscribers) {
+      for (WidgetEvent event : events) {
+        if (!subscriber.offer(event)) {
+          LOGGER.info("Widget event subscriber disconnected, its buffer is full");
+          subscribers.remove(subscriber);
+          break;
+        }
+      }
+    }
+
+    this.position = position;
+  }
+
+  private void reset(SseEmitter emitter) {
+    LOGGER.debug("Widget event subscriber missed compacted events, sending a reset");
+    try {
+      emitter.send(SseEmitter
+          .event()
+          .name(RESET_EVENT)
+          .data(""));
+      emitter.complete();
+    } catch (IOException ex) {
+      emitter.completeWithError(ex);
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    subscribers.forEach(subscriber -> subscriber.getEmitter().complete());
+    senders.shutdownNow();
+  }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.event;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PreDestroy;
+import org.openlmis.template.web.widget.WidgetIdFilter;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listens for the notifications sent by {@link WidgetEventOutbox} on a dedicated database
+ * connection (one outside the pool, as it is held for as long as the service runs) and passes
+ * the stored events to the {@link WidgetEventBroadcaster}. As every node listens, an event
+ * reaches the subscribers of all nodes, whichever node stored it. The ids of saved widgets are
+ * added to the {@link WidgetIdFilter} of this node as well.
+ *
+ * <p>Notifications only signal that events were stored. The events are passed on in id order
+ * once the outbox watermark has passed them, so an event whose transaction commits late is
+ * never overtaken, and events stored while the connection was down are passed on as well.
+ */
+@Component
+public class WidgetEventListener {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WidgetEventListener.class);
+
+  private static final int BATCH_SIZE = 500;
+
+  @Autowired
+  private DataSourceProperties dataSourceProperties;
+
+  @Autowired
+  private WidgetEventOutbox outbox;
+
+  @Autowired
+  private WidgetEventBroadcaster broadcaster;
+
+  @Autowired
+  private WidgetIdFilter widgetIdFilter;
+
+  @Value("${widget.events.pollInterval}")
+  private long pollInterval;
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "widget-event-listener");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // ids of the last event passed on and of the last one known to be stored, used by the
+  // listener thread only (once started)
+  private long position;
+  private long notified;
+
+  /**
+   * Starts listening. Only events stored from now on are passed on.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    position = outbox.updateWatermark();
+    broadcaster.broadcast(Collections.emptyList(), position);
+    executor.execute(this::run);
+  }
+
+  @PreDestroy
+  void stop() {
+    executor.shutdownNow();
+  }
+
+  private void run() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try (Connection connection = DriverManager.getConnection(dataSourceProperties.getUrl(),
+          dataSourceProperties.getUsername(), dataSourceProperties.getPassword())) {
+        listen(connection);
+      } catch (SQLException | DataAccessException ex) {
+        LOGGER.warn("Lost the widget event notification connection, reconnecting", ex);
+        sleep();
+      }
+    }
+  }
+
+  private void listen(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("LISTEN " + WidgetEventOutbox.CHANNEL);
+    }
+
+    // events stored while not listening were not notified
+    notified = Math.max(notified, outbox.findLastId());
+
+    PGConnection pgConnection = connection.unwrap(PGConnection.class);
+    while (!Thread.currentThread().isInterrupted()) {
+      // this version of the driver only receives notifications when it talks to the server
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("SELECT 1");
+      }
+
+      PGNotification[] notifications = pgConnection.getNotifications();
+      if (null != notifications) {
+        for (PGNotification notification : notifications) {
+          notified = Math.max(notified, Long.parseLong(notification.getParameter()));
+        }
+      }
+
+      // events held back by the watermark are retried after the poll interval
+      if (notified <= position || !dispatch()) {
+        sleep();
+      }
+    }
+  }
+
+  private boolean dispatch() {
+    long until = outbox.updateWatermark();
+    List<WidgetEvent> events = outbox.findAfter(position, until, BATCH_SIZE);
+    boolean full = events.size() == BATCH_SIZE;
+
+    events
+        .stream()
+        .filter(event -> WidgetEvent.Type.DELETED != event.getType())
+        .forEach(event -> widgetIdFilter.add(event.getWidgetId()));
+
+    // ids up to the watermark that are missing belong to rolled back transactions
+    position = full ? events.get(events.size() - 1).getId() : until;
+    broadcaster.broadcast(events, position);
+    return full;
+  }
+
+  private void sleep() {
+    try {
+      Thread.sleep(pollInterval);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import org.openlmis.template.util.SequenceWatermark;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Transactional outbox of widget events. Events are appended in the transaction that changes
+ * the widget, so they are stored if and only if the change is committed. Each append also
+ * sends a notification on the {@value #CHANNEL} channel with the id of the event, which
+ * Postgres delivers to the listeners of every node once the transaction commits. Stored events
+ * are also relayed to other consumers by {@link WidgetEventRelay}.
+ *
+ * <p>Event ids are allocated before their transactions commit, so an event with a lower id may
+ * be stored after one with a higher id. Events are therefore read in id order only up to the
+ * {@link SequenceWatermark} of the id sequence, which makes the id of the last event read a
+ * cursor that cannot skip events committed late.
+ */
+@Component
+public class WidgetEventOutbox {
+
+  public static final String CHANNEL = "widget_events";
+
+  private static final String COLUMNS = "eventid, type, widgetid, payload";
+
+  private static final String SEQUENCE = "template.widget_events_eventid_seq";
+
+  // the transaction gets its id before the event id is allocated, as the watermark requires
+  private static final String APPEND_SQL = "WITH event AS ("
+      + "INSERT INTO template.widget_events (" + COLUMNS + ")"
+      + " SELECT nextval('" + SEQUENCE + "'), CAST(? AS text), CAST(? AS uuid), CAST(? AS text)"
+      + " FROM (SELECT txid_current()) AS tx"
+      + " RETURNING eventid)"
+      + " SELECT pg_notify('" + CHANNEL + "', eventid::text) FROM event";
+  private static final String FIND_AFTER_SQL = "SELECT " + COLUMNS
+      + " FROM template.widget_events WHERE eventid > ? AND eventid <= ?"
+      + " ORDER BY eventid LIMIT ?";
+  private static final String FIND_FIRST_ID_SQL = "SELECT COALESCE(MIN(eventid), ?)"
+      + " FROM template.widget_events";
+  private static final String FIND_LAST_ID_SQL = "SELECT COALESCE(MAX(eventid), 0)"
+      + " FROM template.widget_events";
+  private static final String LOCK_UNRELAYED_SQL = "SELECT " + COLUMNS
+      + " FROM template.widget_events WHERE relayeddate IS NULL AND eventid <= ?"
+      + " ORDER BY eventid LIMIT ? FOR UPDATE SKIP LOCKED";
+  private static final String MARK_RELAYED_SQL = "UPDATE template.widget_events"
+      + " SET relayeddate = now() WHERE eventid IN (%s)";
+  private static final String COMPACT_SQL = "DELETE FROM template.widget_events"
+      + " WHERE createddate < now() - ? * INTERVAL '1 millisecond'"
+      + " AND (relayeddate IS NOT NULL OR ?)";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  private SequenceWatermark watermark;
+
+  @PostConstruct
+  public void init() {
+    watermark = new SequenceWatermark(jdbcTemplate, SEQUENCE);
+  }
+
+  /**
+   * Appends an event with the given payload (serialized as JSON) to the outbox. Must be called
+   * in the transaction that changes the widget.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void append(WidgetEvent.Type type, UUID widgetId, Object payload) {
+    String json;
+    try {
+      json = objectMapper.writeValueAsString(payload);
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException(ex);
+    }
+
+    jdbcTemplate.query(APPEND_SQL, rs -> { }, type.name(), widgetId, json);
+  }
+
+  /**
+   * Advances the id up to which events can be read and returns it: every event with an id up to
+   * it that will ever be stored has been stored already. Must not be called in a transaction.
+   */
+  public long updateWatermark() {
+    return watermark.update();
+  }
+
+  /**
+   * Returns up to the given number of events with ids greater than the first given one and not
+   * greater than the second, which should not exceed the watermark, in id order.
+   */
+  public List<WidgetEvent> findAfter(long eventId, long until, int limit) {
+    return jdbcTemplate.query(FIND_AFTER_SQL, this::toEvent, eventId, until, limit);
+  }
+
+  /**
+   * Returns the lowest id of the stored events, or the given id if there are none.
+   */
+  public long findFirstId(long none) {
+    return jdbcTemplate.queryForObject(FIND_FIRST_ID_SQL, Long.class, none);
+  }
+
+  /**
+   * Returns the highest id of the stored events, or 0 if there are none.
+   */
+  public long findLastId() {
+    return jdbcTemplate.queryForObject(FIND_LAST_ID_SQL, Long.class);
+  }
+
+  /**
+   * Returns up to the given number of events with ids not greater than the given one, which
+   * should not exceed the watermark, that have not been relayed yet, in id order, and locks them
+   * until the end of the current transaction. Events locked by another transaction are skipped,
+   * so several relays can work on the outbox at the same time.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public List<WidgetEvent> lockUnrelayed(long until, int limit) {
+    return jdbcTemplate.query(LOCK_UNRELAYED_SQL, this::toEvent, until, limit);
+  }
+
+  /**
+   * Marks the given events as relayed.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void markRelayed(Collection<Long> eventIds) {
+    if (!eventIds.isEmpty()) {
+      jdbcTemplate.update(String.format(MARK_RELAYED_SQL, placeholders(eventIds)),
+          eventIds.toArray());
+    }
+  }
+
+  /**
+   * Deletes the relayed events stored more than the given number of milliseconds ago, and the
+   * ones not relayed yet too if so requested. Returns the number of deleted events.
+   */
+  public int compact(long retention, boolean includeUnrelayed) {
+    return jdbcTemplate.update(COMPACT_SQL, retention, includeUnrelayed);
+  }
+
+  private String placeholders(Collection<?> values) {
+    return values
+        .stream()
+        .map(value -> "?")
+        .collect(Collectors.joining(", "));
+  }
+
+  private WidgetEvent toEvent(ResultSet rs, int rowNum) throws SQLException {
+    return new WidgetEvent(rs.getLong("eventid"),
+        WidgetEvent.Type.valueOf(rs.getString("type")),
+        rs.getObject("widgetid", UUID.class),
+        rs.getString("payload"));
+  }
+
+}
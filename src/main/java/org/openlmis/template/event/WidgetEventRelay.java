@@ -0,0 +1,123 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.event;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Relays the events stored in the widget event outbox to the configured
+ * {@link WidgetEventSink} ({@code widget.events.relay.sink}), in batches, and deletes old events
+ * from the outbox.
+ *
+ * <p>A batch is locked, published and marked as relayed in one transaction, so an event is
+ * relayed again if publishing or marking fails, but never lost. Only events up to the watermark
+ * of the outbox are relayed, so an instance never publishes an event before one with a lower id
+ * whose transaction commits later. Instances of the service relay disjoint batches
+ * concurrently, so events of different batches may still be published out of order; consumers
+ * that care should order them by id.
+ */
+@Component
+public class WidgetEventRelay {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WidgetEventRelay.class);
+
+  @Autowired(required = false)
+  private WidgetEventSink sink;
+
+  @Autowired
+  private WidgetEventOutbox outbox;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Value("${widget.events.relay.batchSize}")
+  private int batchSize;
+
+  @Value("${widget.events.retention}")
+  private long retention;
+
+  /**
+   * Publishes the events not relayed yet, up to the watermark, batch by batch, until there are
+   * none left or publishing fails. Does nothing if no sink is configured.
+   */
+  @Scheduled(initialDelayString = "${widget.events.relay.interval}",
+      fixedDelayString = "${widget.events.relay.interval}")
+  public void relay() {
+    if (null == sink) {
+      return;
+    }
+
+    // read outside of the relay transactions, as the watermark requires
+    long until = outbox.updateWatermark();
+
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    try {
+      int relayed;
+      do {
+        relayed = transaction.execute(status -> relayBatch(until));
+      } while (relayed == batchSize);
+    } catch (UncheckedIOException ex) {
+      LOGGER.warn("Could not relay widget events, will retry", ex.getCause());
+    }
+  }
+
+  /**
+   * Deletes the events that are older than the retention period and have been relayed (or all
+   * of them if no sink is configured). Replaying missed events to event stream subscribers only
+   * works within this period.
+   */
+  @Scheduled(initialDelayString = "${widget.events.compactionInterval}",
+      fixedDelayString = "${widget.events.compactionInterval}")
+  public void compact() {
+    int deleted = outbox.compact(retention, null == sink);
+    LOGGER.debug("Deleted {} old widget events", deleted);
+  }
+
+  private int relayBatch(long until) {
+    List<WidgetEvent> events = outbox.lockUnrelayed(until, batchSize);
+    if (events.isEmpty()) {
+      return 0;
+    }
+
+    try {
+      sink.publish(events);
+    } catch (IOException ex) {
+      // rolls the transaction back, which releases the locks
+      throw new UncheckedIOException(ex);
+    }
+
+    outbox.markRelayed(events
+        .stream()
+        .map(WidgetEvent::getId)
+        .collect(Collectors.toList()));
+
+    LOGGER.debug("Relayed {} widget events", events.size());
+    return events.size();
+  }
+
+}
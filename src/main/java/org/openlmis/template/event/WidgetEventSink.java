@@ -0,0 +1,35 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.event;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the events relayed from the outbox by {@link WidgetEventRelay}. Events are
+ * delivered at least once: a batch is published again if the relay fails before recording it
+ * as relayed, so consumers should ignore events with ids they have already seen.
+ */
+public interface WidgetEventSink {
+
+  /**
+   * Publishes the given events, in the given order. The events must be durably accepted by the
+   * time this method returns; an exception makes the relay retry the whole batch later.
+   */
+  void publish(List<WidgetEvent> events) throws IOException;
+
+}
@@ -25,20 +25,43 @@ public abstract class MessageKeys {
 
   private static final String WIDGET = "widget";
   private static final String JAVERS = "javers";
+  private static final String IDEMPOTENCY_KEY = "idempotencyKey";
 
   private static final String ID = "id";
+  private static final String VERSION = "version";
   private static final String CODE = "code";
+  private static final String FIELD = "field";
 
   private static final String MISMATCH = "mismatch";
   private static final String NOT_FOUND = "notFound";
   private static final String DUPLICATED = "duplicated";
+  private static final String UNKNOWN = "unknown";
+  private static final String INVALID = "invalid";
 
   private static final String ERROR_PREFIX = join(SERVICE_PREFIX, ERROR);
 
   public static final String ERROR_WIDGET_NOT_FOUND = join(ERROR_PREFIX, WIDGET, NOT_FOUND);
   public static final String ERROR_WIDGET_ID_MISMATCH = join(ERROR_PREFIX, WIDGET, ID, MISMATCH);
+  public static final String ERROR_WIDGET_VERSION_MISMATCH =
+      join(ERROR_PREFIX, WIDGET, VERSION, MISMATCH);
   public static final String ERROR_WIDGET_CODE_DUPLICATED =
       join(ERROR_PREFIX, WIDGET, CODE, DUPLICATED);
+  public static final String ERROR_WIDGET_FIELD_UNKNOWN =
+      join(ERROR_PREFIX, WIDGET, FIELD, UNKNOWN);
+  public static final String ERROR_WIDGET_SORT_UNKNOWN =
+      join(ERROR_PREFIX, WIDGET, "sort", UNKNOWN);
+  public static final String ERROR_WIDGET_PATCH_INVALID =
+      join(ERROR_PREFIX, WIDGET, "patch", INVALID);
+  public static final String ERROR_WIDGET_WITH_TOTAL_INVALID =
+      join(ERROR_PREFIX, WIDGET, "withTotal", INVALID);
+
+  public static final String ERROR_IDEMPOTENCY_KEY_INVALID =
+      join(ERROR_PREFIX, IDEMPOTENCY_KEY, INVALID);
+  public static final String ERROR_IDEMPOTENCY_KEY_REUSED =
+      join(ERROR_PREFIX, IDEMPOTENCY_KEY, "reused");
+
+  public static final String ERROR_CONCURRENT_MODIFICATION =
+      join(ERROR_PREFIX, "concurrentModification");
 
   public static final String ERROR_JAVERS_EXISTING_ENTRY =
       join(ERROR_PREFIX, JAVERS, "entryAlreadyExists");
@@ -0,0 +1,85 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.javers.core.Javers;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times the commits and queries of JaVers, both the ones made by our code and the ones made by
+ * the JaVers auditable repository aspect, in the {@value #METRIC_NAME} timer tagged with the
+ * name of the operation.
+ *
+ * <p>JaVers' own implementation class is not public, so instead of an aspect (which would
+ * subclass it) the bean is wrapped in a proxy of the {@link Javers} interface.
+ */
+@Component
+public class JaversMetricsPostProcessor implements BeanPostProcessor {
+
+  static final String METRIC_NAME = "javers.operations";
+
+  // a post processor is created before the registry, so the registry is only looked up when used
+  private final ObjectProvider<MeterRegistry> meterRegistry;
+
+  public JaversMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName) {
+    if (!(bean instanceof Javers)) {
+      return bean;
+    }
+
+    ProxyFactory proxyFactory = new ProxyFactory();
+    proxyFactory.setTarget(bean);
+    proxyFactory.setInterfaces(Javers.class);
+    proxyFactory.addAdvice(new TimingInterceptor());
+
+    return proxyFactory.getProxy(getClass().getClassLoader());
+  }
+
+  private final class TimingInterceptor implements MethodInterceptor {
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+      String operation = invocation.getMethod().getName();
+
+      if (!isTimed(operation)) {
+        return invocation.proceed();
+      }
+
+      return MethodTimer.time(meterRegistry.getObject(), METRIC_NAME,
+          Tags.of("operation", operation), invocation::proceed);
+    }
+
+    // commits and queries access the database, the other methods only compare objects in memory
+    private boolean isTimed(String operation) {
+      return operation.startsWith("commit")
+          || operation.startsWith("find")
+          || "getLatestSnapshot".equals(operation);
+    }
+
+  }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records how long a method call took as a timer tagged with whether it failed and the type of
+ * the exception, the same way Spring Boot tags its {@code http.server.requests} timer.
+ */
+final class MethodTimer {
+
+  private static final String NONE = "None";
+
+  private MethodTimer() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Makes the given call and records how long it took, including when it fails.
+   */
+  static Object time(MeterRegistry registry, String name, Iterable<Tag> tags,
+      Invocation invocation) throws Throwable {
+    Timer.Sample sample = Timer.start(registry);
+    String exception = NONE;
+
+    try {
+      return invocation.proceed();
+    } catch (Throwable ex) {
+      exception = ex.getClass().getSimpleName();
+      throw ex;
+    } finally {
+      sample.stop(Timer
+          .builder(name)
+          .tags(Tags.of(tags)
+              .and("state", NONE.equals(exception) ? "SUCCESS" : "ERROR")
+              .and("exception", exception))
+          .register(registry));
+    }
+  }
+
+  @FunctionalInterface
+  interface Invocation {
+
+    Object proceed() throws Throwable;
+
+  }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every call of a Spring Data repository method, including the ones of custom fragments
+ * and the ones inherited from {@link org.springframework.data.repository.CrudRepository}. The
+ * calls are recorded in the {@value #METRIC_NAME} timer, tagged with the repository interface
+ * and the name of the method.
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+
+  static final String METRIC_NAME = "spring.data.repository.invocations";
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private final Map<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+  /**
+   * Records how long the repository method took.
+   */
+  @Around("this(org.springframework.data.repository.Repository)")
+  public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+    Tags tags = Tags.of(
+        "repository", getRepositoryName(joinPoint.getThis()),
+        "method", joinPoint.getSignature().getName());
+
+    return MethodTimer.time(meterRegistry, METRIC_NAME, tags, joinPoint::proceed);
+  }
+
+  // the proxy implements the repository interface along with Spring's own interfaces
+  private String getRepositoryName(Object proxy) {
+    return repositoryNames.computeIfAbsent(proxy.getClass(), type -> {
+      for (Class<?> userInterface : AopProxyUtils.proxiedUserInterfaces(proxy)) {
+        if (Repository.class.isAssignableFrom(userInterface)) {
+          return userInterface.getSimpleName();
+        }
+      }
+      return type.getSimpleName();
+    });
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The SQL statements executed while handling a request: how many there were, how many rows they
+ * read or changed and how long they took. The statistics of a request are bound to the thread
+ * handling it by {@link SqlStatisticsFilter}, so statements executed on other threads (e.g. while
+ * writing a streamed response) are not counted.
+ */
+public class SqlStatistics {
+
+  private static final ThreadLocal<SqlStatistics> CURRENT = new ThreadLocal<>();
+
+  private int statements;
+  private long rows;
+  private long timeNanos;
+
+  // how many times each statement was executed, repeated ones hint at an N+1 query
+  private final Map<String, Integer> executions = new HashMap<>();
+
+  /**
+   * Binds new statistics to the current thread.
+   */
+  static SqlStatistics start() {
+    SqlStatistics statistics = new SqlStatistics();
+    CURRENT.set(statistics);
+    return statistics;
+  }
+
+  /**
+   * Returns the statistics bound to the current thread or null if there are none.
+   */
+  static SqlStatistics current() {
+    return CURRENT.get();
+  }
+
+  static void clear() {
+    CURRENT.remove();
+  }
+
+  void recordStatement(String sql, long nanos) {
+    statements++;
+    timeNanos += nanos;
+    executions.merge(sql, 1, Integer::sum);
+  }
+
+  void recordRows(long count) {
+    rows += count;
+  }
+
+  public int getStatements() {
+    return statements;
+  }
+
+  public long getRows() {
+    return rows;
+  }
+
+  public long getTimeNanos() {
+    return timeNanos;
+  }
+
+  /**
+   * Returns the statement executed most often, with the number of its executions.
+   */
+  public Optional<Map.Entry<String, Integer>> getMostRepeatedStatement() {
+    return executions
+        .entrySet()
+        .stream()
+        .max(Map.Entry.comparingByValue());
+  }
+
+}
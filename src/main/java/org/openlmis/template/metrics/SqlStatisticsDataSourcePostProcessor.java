@@ -0,0 +1,68 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.metrics;
+
+import javax.sql.DataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.openlmis.template.datasource.StatementLatencyTracker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps the data source used by Hibernate, JaVers and the JDBC templates in a proxy that counts
+ * the statements executed while handling a request, see {@link SqlStatisticsFilter}, and times
+ * all statements for the {@link StatementLatencyTracker}.
+ *
+ * <p>Counting the rows read takes a proxy around every result set and a listener call for every
+ * method called on it, so it is only done unless the production profile is active.
+ */
+@Component
+public class SqlStatisticsDataSourcePostProcessor implements BeanPostProcessor {
+
+  private static final String DATA_SOURCE = "dataSource";
+
+  @Autowired
+  private StatementLatencyTracker statementLatencyTracker;
+
+  @Autowired
+  private Environment environment;
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName) {
+    if (!DATA_SOURCE.equals(beanName) || !(bean instanceof DataSource)) {
+      return bean;
+    }
+
+    SqlStatisticsListener listener = new SqlStatisticsListener(statementLatencyTracker);
+
+    ProxyDataSourceBuilder builder = ProxyDataSourceBuilder
+        .create((DataSource) bean)
+        .name(DATA_SOURCE)
+        .listener(listener);
+
+    if (!environment.acceptsProfiles(Profiles.of(SqlStatisticsFilter.PRODUCTION_PROFILE))) {
+      builder
+          .methodListener(listener)
+          .proxyResultSet();
+    }
+
+    return builder.build();
+  }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Counts the SQL statements executed while handling each request, the rows they read or changed
+ * and how long they took. The counts are recorded as metrics tagged with the endpoint and,
+ * unless the production profile is active, returned in the {@value #STATEMENTS_HEADER},
+ * {@value #ROWS_HEADER} and {@value #TIME_HEADER} (in milliseconds) response headers. The rows
+ * are only counted then as well, see {@link SqlStatisticsDataSourcePostProcessor}.
+ *
+ * <p>Asynchronous dispatches are not filtered, so only the statements executed before the
+ * request turned asynchronous (e.g. a streamed or reactive response) are counted; the metrics
+ * of such requests are tagged {@code partial=true}.
+ *
+ * <p>A request executing more statements than the budget ({@code sql.statementBudget}) is
+ * logged with its most repeated statement, which usually points at an N+1 query.
+ */
+@Component
+public class SqlStatisticsFilter extends OncePerRequestFilter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SqlStatisticsFilter.class);
+
+  static final String STATEMENTS_HEADER = "X-SQL-Statements";
+  static final String ROWS_HEADER = "X-SQL-Rows";
+  static final String TIME_HEADER = "X-SQL-Time";
+
+  static final String STATEMENTS_METRIC = "http.server.requests.sql.statements";
+  static final String ROWS_METRIC = "http.server.requests.sql.rows";
+  static final String TIME_METRIC = "http.server.requests.sql.time";
+  static final String BUDGET_EXCEEDED_METRIC = "http.server.requests.sql.budget.exceeded";
+
+  // bound the histogram buckets, which would otherwise go up to Long.MAX_VALUE
+  private static final long MAX_EXPECTED_STATEMENTS = 1_000;
+  private static final long MAX_EXPECTED_ROWS = 100_000;
+
+  static final String PRODUCTION_PROFILE = "production";
+  private static final String UNKNOWN_URI = "UNKNOWN";
+
+  @Value("${sql.statementBudget}")
+  private int statementBudget;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private Environment environment;
+
+  // the rows are only counted if the headers are enabled
+  private boolean headersEnabled;
+
+  @Override
+  protected void initFilterBean() {
+    headersEnabled = !environment.acceptsProfiles(Profiles.of(PRODUCTION_PROFILE));
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain filterChain) throws ServletException, IOException {
+    SqlStatistics statistics = SqlStatistics.start();
+
+    try {
+      filterChain.doFilter(request,
+          headersEnabled ? new HeaderWritingResponse(response, statistics) : response);
+    } finally {
+      SqlStatistics.clear();
+
+      // headers written when the body was started are updated with the statements run since
+      if (headersEnabled) {
+        writeHeaders(response, statistics);
+      }
+
+      record(request, statistics);
+    }
+  }
+
+  private void record(HttpServletRequest request, SqlStatistics statistics) {
+    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    String uri = null == pattern ? UNKNOWN_URI : pattern.toString();
+    Tags tags = Tags.of("method", request.getMethod(), "uri", uri,
+        "partial", String.valueOf(request.isAsyncStarted()));
+
+    DistributionSummary
+        .builder(STATEMENTS_METRIC)
+        .tags(tags)
+        .maximumExpectedValue(MAX_EXPECTED_STATEMENTS)
+        .register(meterRegistry)
+        .record(statistics.getStatements());
+    if (headersEnabled) {
+      DistributionSummary
+          .builder(ROWS_METRIC)
+          .tags(tags)
+          .maximumExpectedValue(MAX_EXPECTED_ROWS)
+          .register(meterRegistry)
+          .record(statistics.getRows());
+    }
+    Timer
+        .builder(TIME_METRIC)
+        .tags(tags)
+        .register(meterRegistry)
+        .record(statistics.getTimeNanos(), TimeUnit.NANOSECONDS);
+
+    if (statistics.getStatements() > statementBudget) {
+      Counter
+          .builder(BUDGET_EXCEEDED_METRIC)
+          .tags(tags)
+          .register(meterRegistry)
+          .increment();
+
+      Map.Entry<String, Integer> repeated = statistics.getMostRepeatedStatement().orElse(null);
+      LOGGER.warn("{} {} executed {} SQL statements, more than the budget of {}. "
+              + "The most repeated one ran {} times: {}",
+          request.getMethod(), uri, statistics.getStatements(), statementBudget,
+          null == repeated ? 0 : repeated.getValue(), null == repeated ? "" : repeated.getKey());
+    }
+  }
+
+  private static void writeHeaders(HttpServletResponse response, SqlStatistics statistics) {
+    if (response.isCommitted()) {
+      return;
+    }
+
+    response.setHeader(STATEMENTS_HEADER, String.valueOf(statistics.getStatements()));
+    response.setHeader(ROWS_HEADER, String.valueOf(statistics.getRows()));
+    response.setHeader(TIME_HEADER,
+        String.valueOf(TimeUnit.NANOSECONDS.toMillis(statistics.getTimeNanos())));
+  }
+
+  /**
+   * Writes the headers before the response can be committed, which happens once the body gets
+   * bigger than the response buffer.
+   */
+  private static final class HeaderWritingResponse extends HttpServletResponseWrapper {
+
+    private final SqlStatistics statistics;
+
+    HeaderWritingResponse(HttpServletResponse response, SqlStatistics statistics) {
+      super(response);
+      this.statistics = statistics;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      writeHeaders(this, statistics);
+      return super.getOutputStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      writeHeaders(this, statistics);
+      return super.getWriter();
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      writeHeaders(this, statistics);
+      super.flushBuffer();
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+      writeHeaders(this, statistics);
+      super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+      writeHeaders(this, statistics);
+      super.sendError(sc);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+      writeHeaders(this, statistics);
+      super.sendRedirect(location);
+    }
+
+  }
+
+}
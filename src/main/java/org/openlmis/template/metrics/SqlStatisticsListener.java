@@ -0,0 +1,100 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.metrics;
+
+import java.sql.ResultSet;
+import java.util.List;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.MethodExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.openlmis.template.datasource.StatementLatencyTracker;
+
+/**
+ * Adds the statements executed through the data source proxy, and the rows they read or changed,
+ * to the {@link SqlStatistics} of the current request. The execution time of every statement,
+ * within a request or not, is recorded by the given {@link StatementLatencyTracker} too.
+ */
+class SqlStatisticsListener implements QueryExecutionListener, MethodExecutionListener {
+
+  private final StatementLatencyTracker statementLatencyTracker;
+
+  private final ThreadLocal<Long> started = new ThreadLocal<>();
+
+  SqlStatisticsListener(StatementLatencyTracker statementLatencyTracker) {
+    this.statementLatencyTracker = statementLatencyTracker;
+  }
+
+  @Override
+  public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    started.set(System.nanoTime());
+  }
+
+  @Override
+  public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    Long start = started.get();
+    if (null == start) {
+      return;
+    }
+
+    started.remove();
+    long elapsed = System.nanoTime() - start;
+    statementLatencyTracker.record(elapsed);
+
+    SqlStatistics statistics = SqlStatistics.current();
+    if (null == statistics) {
+      return;
+    }
+
+    // a batch is a single round trip, so it counts as one statement
+    String sql = queryInfoList.isEmpty() ? "" : queryInfoList.get(0).getQuery();
+    statistics.recordStatement(sql, elapsed);
+    statistics.recordRows(getUpdateCount(execInfo.getResult()));
+  }
+
+  @Override
+  public void beforeMethod(MethodExecutionContext executionContext) {
+    // only the result of a method is of interest
+  }
+
+  @Override
+  public void afterMethod(MethodExecutionContext executionContext) {
+    SqlStatistics statistics = SqlStatistics.current();
+
+    if (null != statistics && executionContext.getTarget() instanceof ResultSet
+        && "next".equals(executionContext.getMethod().getName())
+        && Boolean.TRUE.equals(executionContext.getResult())) {
+      statistics.recordRows(1);
+    }
+  }
+
+  // the rows read by a query are counted as they are fetched from its result set instead
+  private long getUpdateCount(Object result) {
+    if (result instanceof Number) {
+      return Math.max(0, ((Number) result).longValue());
+    }
+
+    long count = 0;
+    if (result instanceof int[]) {
+      for (int updated : (int[]) result) {
+        count += Math.max(0, updated);
+      }
+    }
+    return count;
+  }
+
+}
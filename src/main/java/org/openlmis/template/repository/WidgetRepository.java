@@ -15,17 +15,25 @@
 
 package org.openlmis.template.repository;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 import java.util.UUID;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
 import org.javers.spring.annotation.JaversSpringDataAuditable;
 import org.openlmis.template.domain.Widget;
+import org.openlmis.template.repository.custom.WidgetRepositoryCustom;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
 @JaversSpringDataAuditable
 public interface WidgetRepository extends PagingAndSortingRepository<Widget, UUID>,
-      BaseAuditableRepository<Widget,  UUID> {
+      BaseAuditableRepository<Widget,  UUID>, WidgetRepositoryCustom {
 
   @Query(value = "SELECT\n"
       + "    w.*\n"
@@ -43,4 +51,38 @@ public interface WidgetRepository extends PagingAndSortingRepository<Widget, UUI
       + "    )\n",
       nativeQuery = true)
   Page<Widget> findAllWithoutSnapshots(Pageable pageable);
+
+  /**
+   * Returns a {@link Page} of widgets, like {@link #findAll(Pageable)}, but loaded read-only, so
+   * Hibernate keeps no snapshots of them for dirty checking; they must not be modified.
+   */
+  @Query("SELECT w FROM Widget w")
+  @QueryHints(@QueryHint(name = HINT_READONLY, value = "true"))
+  Page<Widget> findAllReadOnly(Pageable pageable);
+
+  /**
+   * Returns a {@link Slice} of widgets. Unlike {@link #findAllReadOnly(Pageable)} this does not
+   * issue a count query; one extra row is fetched instead to determine whether there are more.
+   * The widgets are loaded read-only too.
+   */
+  @QueryHints(@QueryHint(name = HINT_READONLY, value = "true"))
+  Slice<Widget> findAllBy(Pageable pageable);
+
+  /**
+   * Returns the number of widgets estimated by the PostgreSQL planner statistics. It is cheap
+   * to get, but only as accurate as the last ANALYZE (or autovacuum) of the table.
+   */
+  @Query(value = "SELECT CAST(GREATEST(c.reltuples, 0) AS bigint)\n"
+      + "FROM pg_class c\n"
+      + "WHERE c.oid = CAST('template.widget' AS regclass)\n",
+      nativeQuery = true)
+  long estimateCount();
+
+  /**
+   * Streams the ids of all widgets from a database cursor. The returned stream has to be closed
+   * and consumed within a transaction.
+   */
+  @Query("SELECT w.id FROM Widget w")
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "5000"))
+  Stream<UUID> streamAllIds();
 }
@@ -0,0 +1,112 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.repository.custom;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.openlmis.template.domain.Widget;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+public interface WidgetRepositoryCustom {
+
+  /**
+   * Returns a {@link Page} of widgets where each widget contains only the given fields (in the
+   * given order). Only the columns backing these fields are selected and no entities are
+   * loaded into the persistence context.
+   *
+   * @param fields names of the Widget properties that should be selected.
+   * @param pageable pagination and sorting parameters.
+   */
+  Page<Map<String, Object>> findAllProjected(Collection<String> fields, Pageable pageable);
+
+  /**
+   * Streams a page of widgets with only the given fields like
+   * {@link #findAllProjected(Collection, Pageable)}, from a database cursor, so big pages can be
+   * processed without loading them into memory. The returned stream has to be closed and
+   * consumed within a transaction.
+   *
+   * @param fields names of the Widget properties that should be selected.
+   * @param pageable pagination and sorting parameters; the offset is applied by the database.
+   */
+  Stream<Map<String, Object>> streamAllProjected(Collection<String> fields, Pageable pageable);
+
+  /**
+   * Streams a page of widgets from a database cursor, so big pages can be processed without
+   * loading them into memory. The returned stream has to be closed and consumed within a
+   * transaction. The widgets are loaded read-only; callers should detach them once processed.
+   *
+   * @param pageable pagination and sorting parameters; the offset is applied by the database.
+   */
+  Stream<Widget> streamAll(Pageable pageable);
+
+  /**
+   * Returns a {@link Slice} of widgets that come after the given widget in the given order,
+   * using keyset pagination ({@code WHERE (sortKey, id) > (?, ?)}) instead of an offset, so
+   * every batch is read from an index no matter how far into the results it is, and rows added
+   * or removed in between do not shift the following batches. The id is always used as the last
+   * sort property to make the order unique.
+   *
+   * @param after the last widget of the previous batch, or null for the first batch.
+   * @param sort the order of the widgets.
+   * @param size the maximum number of widgets to return.
+   */
+  Slice<Widget> findAllAfter(Widget after, Sort sort, int size);
+
+  /**
+   * Deletes the widget with the given id with a single statement, without loading it first,
+   * and records the deletion in the audit log.
+   *
+   * @param id id of the widget to delete.
+   * @return false if there was no widget with the given id.
+   */
+  boolean removeById(UUID id);
+
+  /**
+   * Deletes the widget with the given id like {@link #removeById(UUID)}, but only if its current
+   * version is one of the expected ones.
+   *
+   * @param id id of the widget to delete.
+   * @param expectedVersions versions the widget may have; if empty, any version matches.
+   * @return false if there was no widget with the given id and one of the expected versions.
+   */
+  boolean removeById(UUID id, Collection<Long> expectedVersions);
+
+  /**
+   * Inserts the given widget or, if a widget with its id already exists, replaces its name and
+   * code and increments its version, with a single statement and without loading it first. The
+   * new version is set on the given widget and its new state is committed to the audit log.
+   *
+   * @param widget the widget to save, with its id set.
+   */
+  void upsert(Widget widget);
+
+  /**
+   * Replaces the name and code of an existing widget and increments its version, with a single
+   * statement, but only if its current version is one of the expected ones. The new version is
+   * set on the given widget and its new state is committed to the audit log.
+   *
+   * @param widget the widget to save, with its id set.
+   * @param expectedVersions versions the widget may have; if empty, any version matches.
+   * @return false if there was no widget with the given id and one of the expected versions.
+   */
+  boolean update(Widget widget, Collection<Long> expectedVersions);
+
+}
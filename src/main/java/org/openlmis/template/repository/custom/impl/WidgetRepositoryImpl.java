@@ -0,0 +1,330 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.repository.custom.impl;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.LongType;
+import org.hibernate.type.PostgresUUIDType;
+import org.hibernate.type.StringType;
+import org.javers.common.exception.JaversException;
+import org.javers.common.exception.JaversExceptionCode;
+import org.javers.core.Javers;
+import org.javers.repository.jql.InstanceIdDTO;
+import org.javers.spring.auditable.AuthorProvider;
+import org.openlmis.template.domain.Widget;
+import org.openlmis.template.repository.custom.WidgetRepositoryCustom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+
+public class WidgetRepositoryImpl implements WidgetRepositoryCustom {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WidgetRepositoryImpl.class);
+
+  // rows fetched from the database cursor at once when streaming
+  private static final int STREAM_FETCH_SIZE = 500;
+
+  private static final String ID = "id";
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Autowired
+  private Javers javers;
+
+  @Autowired
+  private AuthorProvider authorProvider;
+
+  @Override
+  public Page<Map<String, Object>> findAllProjected(Collection<String> fields,
+      Pageable pageable) {
+    TypedQuery<Tuple> query = createProjectionQuery(fields, pageable.getSort());
+
+    if (!applyPage(query, pageable)) {
+      return PageableExecutionUtils.getPage(Collections.emptyList(), pageable, this::count);
+    }
+
+    List<Map<String, Object>> content = query
+        .getResultList()
+        .stream()
+        .map(tuple -> toMap(fields, tuple))
+        .collect(Collectors.toList());
+
+    // the count query is skipped when the total can be derived from the content
+    return PageableExecutionUtils.getPage(content, pageable, this::count);
+  }
+
+  @Override
+  public Stream<Map<String, Object>> streamAllProjected(Collection<String> fields,
+      Pageable pageable) {
+    TypedQuery<Tuple> query = createProjectionQuery(fields, pageable.getSort())
+        .setHint(HINT_FETCH_SIZE, STREAM_FETCH_SIZE);
+
+    if (!applyPage(query, pageable)) {
+      return Stream.empty();
+    }
+
+    return query
+        .getResultStream()
+        .map(tuple -> toMap(fields, tuple));
+  }
+
+  @Override
+  public Stream<Widget> streamAll(Pageable pageable) {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+
+    CriteriaQuery<Widget> criteria = builder.createQuery(Widget.class);
+    Root<Widget> root = criteria.from(Widget.class);
+    criteria.select(root);
+    criteria.orderBy(QueryUtils.toOrders(pageable.getSort(), root, builder));
+
+    TypedQuery<Widget> query = entityManager
+        .createQuery(criteria)
+        .setHint(HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+        .setHint(HINT_READONLY, true);
+
+    if (!applyPage(query, pageable)) {
+      return Stream.empty();
+    }
+
+    return query.getResultStream();
+  }
+
+  @Override
+  public Slice<Widget> findAllAfter(Widget after, Sort sort, int size) {
+    Sort keyset = sort.getOrderFor(ID) == null ? sort.and(Sort.by(ID)) : sort;
+
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+
+    CriteriaQuery<Widget> criteria = builder.createQuery(Widget.class);
+    Root<Widget> root = criteria.from(Widget.class);
+    criteria.select(root);
+    criteria.orderBy(QueryUtils.toOrders(keyset, root, builder));
+
+    if (null != after) {
+      criteria.where(createKeysetPredicate(builder, root, keyset, after));
+    }
+
+    // one more row tells whether there is a next batch
+    List<Widget> content = new ArrayList<>(entityManager
+        .createQuery(criteria)
+        .setHint(HINT_READONLY, true)
+        .setMaxResults(size + 1)
+        .getResultList());
+
+    boolean hasNext = content.size() > size;
+    if (hasNext) {
+      content.remove(size);
+    }
+
+    return new SliceImpl<>(content, PageRequest.of(0, size, keyset), hasNext);
+  }
+
+  @Override
+  public boolean removeById(UUID id) {
+    return removeById(id, Collections.emptySet());
+  }
+
+  @Override
+  public boolean removeById(UUID id, Collection<Long> expectedVersions) {
+    Query query = entityManager.createQuery(expectedVersions.isEmpty()
+        ? "DELETE FROM Widget w WHERE w.id = :id"
+        : "DELETE FROM Widget w WHERE w.id = :id AND w.version IN :versions")
+        .setParameter("id", id);
+
+    if (!expectedVersions.isEmpty()) {
+      query.setParameter("versions", expectedVersions);
+    }
+
+    if (0 == query.executeUpdate()) {
+      return false;
+    }
+
+    try {
+      javers.commitShallowDeleteById(authorProvider.provide(),
+          InstanceIdDTO.instanceId(id, Widget.class));
+    } catch (JaversException ex) {
+      // widgets inserted without JaVers (e.g. demo data) have no snapshot to terminate
+      if (ex.getCode() != JaversExceptionCode.CANT_DELETE_OBJECT_NOT_FOUND) {
+        throw ex;
+      }
+      LOGGER.debug("Widget {} has no audit log entries, deletion not recorded", id);
+    }
+
+    return true;
+  }
+
+  @Override
+  public void upsert(Widget widget) {
+    List<?> versions = createSaveQuery(
+        "INSERT INTO template.widget AS w (id, name, code, version)\n"
+        + "VALUES (:id, :name, :code, 0)\n"
+        + "ON CONFLICT (id) DO UPDATE\n"
+        + "SET name = EXCLUDED.name, code = EXCLUDED.code, version = w.version + 1\n"
+        + "RETURNING w.version", widget)
+        .getResultList();
+
+    widget.setVersion((Long) versions.get(0));
+    javers.commit(authorProvider.provide(), widget);
+  }
+
+  @Override
+  public boolean update(Widget widget, Collection<Long> expectedVersions) {
+    NativeQuery<?> query = createSaveQuery("UPDATE template.widget\n"
+        + "SET name = :name, code = :code, version = version + 1\n"
+        + "WHERE id = :id"
+        + (expectedVersions.isEmpty() ? "" : " AND version IN (:versions)")
+        + "\nRETURNING version", widget);
+
+    if (!expectedVersions.isEmpty()) {
+      query.setParameterList("versions", expectedVersions, LongType.INSTANCE);
+    }
+
+    List<?> versions = query.getResultList();
+
+    if (versions.isEmpty()) {
+      return false;
+    }
+
+    widget.setVersion((Long) versions.get(0));
+    javers.commit(authorProvider.provide(), widget);
+
+    return true;
+  }
+
+  private TypedQuery<Tuple> createProjectionQuery(Collection<String> fields, Sort sort) {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+
+    CriteriaQuery<Tuple> query = builder.createTupleQuery();
+    Root<Widget> root = query.from(Widget.class);
+    query.multiselect(fields
+        .stream()
+        .<Selection<?>>map(field -> root.get(field).alias(field))
+        .collect(Collectors.toList()));
+    query.orderBy(QueryUtils.toOrders(sort, root, builder));
+
+    return entityManager.createQuery(query);
+  }
+
+  // the offset is applied by the database; returns false if it is beyond any possible result
+  private boolean applyPage(TypedQuery<?> query, Pageable pageable) {
+    if (pageable.isUnpaged()) {
+      return true;
+    }
+
+    if (pageable.getOffset() > Integer.MAX_VALUE) {
+      return false;
+    }
+
+    query
+        .setFirstResult((int) pageable.getOffset())
+        .setMaxResults(pageable.getPageSize());
+
+    return true;
+  }
+
+  // (a, b) > (x, y) expanded to a > x OR (a = x AND b > y), honouring each sort direction and
+  // PostgreSQL's default null ordering (nulls last when ascending, first when descending)
+  @SuppressWarnings("unchecked")
+  private Predicate createKeysetPredicate(CriteriaBuilder builder, Root<Widget> root, Sort keyset,
+      Widget after) {
+    BeanWrapper values = new BeanWrapperImpl(after);
+    List<Predicate> equalPrefix = new ArrayList<>();
+    List<Predicate> alternatives = new ArrayList<>();
+
+    for (Sort.Order order : keyset) {
+      Expression<Comparable> path = root.<Comparable>get(order.getProperty());
+      Comparable value = (Comparable) values.getPropertyValue(order.getProperty());
+
+      Predicate following;
+      if (null == value) {
+        following = order.isAscending() ? builder.disjunction() : builder.isNotNull(path);
+      } else if (order.isAscending()) {
+        following = builder.or(builder.greaterThan(path, value), builder.isNull(path));
+      } else {
+        following = builder.lessThan(path, value);
+      }
+
+      List<Predicate> alternative = new ArrayList<>(equalPrefix);
+      alternative.add(following);
+      alternatives.add(builder.and(alternative.toArray(new Predicate[0])));
+
+      equalPrefix.add(null == value ? builder.isNull(path) : builder.equal(path, value));
+    }
+
+    return builder.or(alternatives.toArray(new Predicate[0]));
+  }
+
+  private long count() {
+    CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+
+    CriteriaQuery<Long> query = builder.createQuery(Long.class);
+    query.select(builder.count(query.from(Widget.class)));
+
+    return entityManager.createQuery(query).getSingleResult();
+  }
+
+  // the statement must return the new version of the widget
+  private NativeQuery<?> createSaveQuery(String sql, Widget widget) {
+    return entityManager
+        .createNativeQuery(sql)
+        .unwrap(NativeQuery.class)
+        .setParameter("id", widget.getId(), PostgresUUIDType.INSTANCE)
+        .setParameter("name", widget.getName(), StringType.INSTANCE)
+        .setParameter("code", widget.getCode(), StringType.INSTANCE)
+        .addScalar("version", LongType.INSTANCE);
+  }
+
+  private Map<String, Object> toMap(Collection<String> fields, Tuple tuple) {
+    Map<String, Object> map = new LinkedHashMap<>();
+    fields.forEach(field -> map.put(field, tuple.get(field)));
+    return map;
+  }
+
+}
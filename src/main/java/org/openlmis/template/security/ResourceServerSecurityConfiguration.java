@@ -88,7 +88,9 @@ public class ResourceServerSecurityConfiguration implements ResourceServerConfig
             "/template",
             "/webjars/**",
             "/template/webjars/**",
-            "/template/docs/**"
+            "/template/docs/**",
+            // not routed by nginx, so only reachable from within the deployment
+            "/actuator/health"
         ).permitAll()
         .antMatchers("/**").fullyAuthenticated();
   }
@@ -0,0 +1,75 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.util;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Converts between entity versions and the entity tags used in the ETag and If-Match headers.
+ * Only strong tags are produced and matched, since If-Match always uses the strong comparison.
+ */
+public final class ETags {
+
+  public static final String ANY = "*";
+
+  private static final String QUOTE = "\"";
+  private static final String WEAK_PREFIX = "W/";
+
+  private ETags() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Returns the entity tag of the given version, e.g. {@code "3"}.
+   */
+  public static String fromVersion(long version) {
+    return QUOTE + version + QUOTE;
+  }
+
+  /**
+   * Returns true if the given If-Match header value matches any current entity.
+   */
+  public static boolean isAny(String ifMatch) {
+    return ANY.equals(ifMatch.trim());
+  }
+
+  /**
+   * Returns the versions listed in the given If-Match header value. Weak tags and tags that do
+   * not hold a version are skipped, as they can never match the current entity.
+   */
+  public static Set<Long> parseVersions(String ifMatch) {
+    Set<Long> versions = new LinkedHashSet<>();
+
+    for (String element : ifMatch.split(",")) {
+      String tag = element.trim();
+
+      if (tag.startsWith(WEAK_PREFIX) || tag.length() < 3
+          || !tag.startsWith(QUOTE) || !tag.endsWith(QUOTE)) {
+        continue;
+      }
+
+      try {
+        versions.add(Long.valueOf(tag.substring(1, tag.length() - 1)));
+      } catch (NumberFormatException ex) {
+        // a tag that was not produced by this service
+      }
+    }
+
+    return versions;
+  }
+
+}
@@ -16,7 +16,10 @@
 package org.openlmis.template.util;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
@@ -60,12 +63,27 @@ public final class Pagination {
   }
 
   /**
-   * Convenience method for getPage(List originalList, Pageable pageable).
+   * Returns the Page for a subset of the specified iterable, determined by the pageable passed in.
+   * Only the elements of the requested page are copied. If the data is a collection, it is walked
+   * only up to the end of the page; otherwise the remaining elements are walked (but not stored)
+   * to count them.
    */
   public static <T> Page<T> getPage(Iterable<T> data, Pageable pageable) {
-    List<T> resultList = new ArrayList<>();
-    data.forEach(resultList::add);
-    return getPage(resultList, pageable);
+    if (data instanceof List) {
+      return getPage((List<T>) data, pageable);
+    }
+
+    Long knownSize = data instanceof Collection ? (long) ((Collection<T>) data).size() : null;
+    return collectPage(data.iterator(), pageable, knownSize);
+  }
+
+  /**
+   * Returns the Page for a subset of the specified stream, determined by the pageable passed in.
+   * Only the elements of the requested page are collected; the rest of the stream is consumed
+   * just to count it. The stream is not closed.
+   */
+  public static <T> Page<T> getPage(Stream<T> data, Pageable pageable) {
+    return collectPage(data.iterator(), pageable, null);
   }
 
   /**
@@ -111,4 +129,35 @@ public final class Pagination {
     return new PageImpl<>(subList, pageable, fullListSize);
   }
 
+  private static <T> Page<T> collectPage(Iterator<T> iterator, Pageable pageable,
+      Long knownSize) {
+    int pageSize = getPageSize(pageable);
+    long fromIndex = (long) getPageNumber(pageable) * pageSize;
+    long toIndex = fromIndex + pageSize;
+
+    List<T> content = null == knownSize
+        ? new ArrayList<>()
+        : new ArrayList<>((int) Math.max(0, Math.min(toIndex, knownSize) - fromIndex));
+
+    long index = 0;
+    while (index < toIndex && iterator.hasNext()) {
+      T element = iterator.next();
+      if (index >= fromIndex) {
+        content.add(element);
+      }
+      index++;
+    }
+
+    if (null != knownSize) {
+      return getPage(content, pageable, knownSize);
+    }
+
+    while (iterator.hasNext()) {
+      iterator.next();
+      index++;
+    }
+
+    return getPage(content, pageable, index);
+  }
+
 }
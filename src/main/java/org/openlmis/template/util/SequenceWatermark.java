@@ -0,0 +1,91 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Tracks the highest value of a database sequence below which no transaction can still commit
+ * a row. Values of a sequence are allocated before their transactions commit, so a row with a
+ * lower value may become visible after one with a higher value, and a reader that keeps the
+ * highest value it has seen as its cursor would skip it. Handing out rows only up to this
+ * watermark makes such a cursor safe.
+ *
+ * <p>Each update reads the current value of the sequence and then the transactions in flight.
+ * Every value read was allocated by a transaction that is either finished or among them, so
+ * once all of them are finished (the oldest running transaction is newer than all of them),
+ * the value becomes the watermark. The rows must be inserted by transactions that already
+ * have an id when they allocate the value, i.e. ones that have written something before.
+ */
+public class SequenceWatermark {
+
+  // observations waiting for their transactions are dropped beyond this, which only delays
+  // the watermark
+  private static final int MAX_PENDING = 1000;
+
+  private static final String SNAPSHOT_SQL = "SELECT txid_snapshot_xmin(s) AS xmin,"
+      + " txid_snapshot_xmax(s) AS xmax FROM txid_current_snapshot() s";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final String sequenceSql;
+
+  // guarded by this
+  private final Deque<long[]> pending = new ArrayDeque<>();
+  private long watermark;
+
+  /**
+   * Creates a new watermark of the given sequence (a qualified name).
+   */
+  public SequenceWatermark(JdbcTemplate jdbcTemplate, String sequence) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.sequenceSql = "SELECT CASE WHEN is_called THEN last_value ELSE 0 END FROM " + sequence;
+  }
+
+  /**
+   * Returns the current watermark: every row with a value up to it that will ever be committed
+   * has been committed already.
+   */
+  public synchronized long get() {
+    return watermark;
+  }
+
+  /**
+   * Advances the watermark as far as the finished transactions allow and returns it. Must not
+   * be called within a transaction that has written anything or reads a single snapshot, as the
+   * sequence and the transactions in flight have to be read by separate statements, in order.
+   */
+  public synchronized long update() {
+    Long value = jdbcTemplate.queryForObject(sequenceSql, Long.class);
+    long[] snapshot = jdbcTemplate.queryForObject(SNAPSHOT_SQL,
+        (rs, rowNum) -> new long[]{rs.getLong("xmin"), rs.getLong("xmax")});
+
+    if (pending.size() == MAX_PENDING) {
+      pending.removeFirst();
+    }
+    pending.addLast(new long[]{null == value ? 0 : value, snapshot[1]});
+
+    // the transactions in flight at an observation have all finished once the oldest running
+    // transaction is at least as new as the first one that had not started then
+    while (!pending.isEmpty() && pending.peekFirst()[1] <= snapshot[0]) {
+      watermark = Math.max(watermark, pending.removeFirst()[0]);
+    }
+
+    return watermark;
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: while a value is being loaded for a key, other
+ * callers asking for that key wait for it and get the same result (or exception) instead of
+ * loading it again. Nothing is cached; once the load is done, the next call loads it anew.
+ *
+ * <p>The result is shared between threads, so it should be immutable (e.g. a DTO rather than
+ * an entity attached to the persistence context of the loading thread).
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the value for the given key, loading it with the given loader unless another
+   * thread is already loading it.
+   */
+  public V execute(K key, Supplier<V> loader) {
+    CompletableFuture<V> call = new CompletableFuture<>();
+    CompletableFuture<V> leader = inFlight.putIfAbsent(key, call);
+
+    if (null != leader) {
+      return join(leader);
+    }
+
+    try {
+      V value = loader.get();
+      call.complete(value);
+      return value;
+    } catch (RuntimeException | Error ex) {
+      call.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inFlight.remove(key, call);
+    }
+  }
+
+  /**
+   * Makes callers asking for the given key from now on load it anew instead of waiting for the
+   * load that is currently in flight, e.g. because it may have read data that has just changed.
+   */
+  public void forget(K key) {
+    inFlight.remove(key);
+  }
+
+  /**
+   * Makes callers asking for any key from now on load it anew, like {@link #forget(Object)}.
+   */
+  public void forgetAll() {
+    inFlight.clear();
+  }
+
+  private V join(CompletableFuture<V> call) {
+    try {
+      return call.join();
+    } catch (CompletionException ex) {
+      // the loader can only throw unchecked exceptions, which are rethrown as they are
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      if (ex.getCause() instanceof Error) {
+        throw (Error) ex.getCause();
+      }
+      throw ex;
+    }
+  }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.util;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter of UUIDs. It may report that it contains a UUID that was never
+ * added (with the false positive probability it was created for), but never the other way round.
+ * UUIDs cannot be removed from it.
+ */
+public final class UuidBloomFilter {
+
+  private static final double LN2 = Math.log(2);
+
+  private final AtomicLongArray words;
+  private final long bitCount;
+  private final int hashCount;
+
+  private UuidBloomFilter(long bitCount, int hashCount) {
+    this.words = new AtomicLongArray((int) ((bitCount + Long.SIZE - 1) / Long.SIZE));
+    this.bitCount = (long) words.length() * Long.SIZE;
+    this.hashCount = hashCount;
+  }
+
+  /**
+   * Creates a filter sized so that the false positive probability stays below the given one
+   * as long as no more than the expected number of UUIDs is added.
+   */
+  public static UuidBloomFilter create(long expectedInsertions, double falsePositiveProbability) {
+    long insertions = Math.max(1, expectedInsertions);
+    long bits = Math.max(Long.SIZE,
+        (long) (-insertions * Math.log(falsePositiveProbability) / (LN2 * LN2)));
+    int hashes = Math.max(1, (int) Math.round((double) bits / insertions * LN2));
+
+    return new UuidBloomFilter(bits, hashes);
+  }
+
+  /**
+   * Adds the given UUID to this filter.
+   */
+  public void put(UUID id) {
+    long hash1 = mix(id.getMostSignificantBits());
+    long hash2 = mix(id.getLeastSignificantBits());
+
+    for (int i = 0; i < hashCount; i++) {
+      long bit = index(hash1, hash2, i);
+      words.getAndAccumulate((int) (bit / Long.SIZE), 1L << bit, (word, mask) -> word | mask);
+    }
+  }
+
+  /**
+   * Returns false if the given UUID has definitely not been added to this filter.
+   */
+  public boolean mightContain(UUID id) {
+    long hash1 = mix(id.getMostSignificantBits());
+    long hash2 = mix(id.getLeastSignificantBits());
+
+    for (int i = 0; i < hashCount; i++) {
+      long bit = index(hash1, hash2, i);
+      if ((words.get((int) (bit / Long.SIZE)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  // double hashing, see Kirsch and Mitzenmacher, "Less Hashing, Same Performance"
+  private long index(long hash1, long hash2, int i) {
+    return Math.floorMod(hash1 + i * hash2, bitCount);
+  }
+
+  // the finalization step of MurmurHash3
+  private static long mix(long value) {
+    long hash = value;
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+}
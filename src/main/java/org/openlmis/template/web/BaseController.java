@@ -41,7 +41,18 @@ public abstract class BaseController {
 
   protected ResponseEntity<String> getAuditLogResponse(Class type, UUID id, String author,
       String changedPropertyName, Pageable page) {
-    String auditLogs = getAuditLogJson(type, id, author, changedPropertyName, page);
+    return getAuditLogResponse(getChangesByType(type, id, author, changedPropertyName, page));
+  }
+
+  /**
+   * Return the given changes as JSON.
+   *
+   * @param changes The changes returned by
+   *                {@link #getChangesByType(Class, UUID, String, String, Pageable)}.
+   */
+  protected ResponseEntity<String> getAuditLogResponse(List<Change> changes) {
+    JsonConverter jsonConverter = javers.getJsonConverter();
+    String auditLogs = jsonConverter.toJson(changes);
 
     HttpHeaders headers = new HttpHeaders();
     headers.setContentType(MediaType.APPLICATION_JSON);
@@ -50,7 +61,7 @@ public abstract class BaseController {
   }
 
   /**
-   * Return a list of changes via JSON.
+   * Return JaVers changes for the specified type, optionally filtered by id, author, and property.
    *
    * @param type The type of class for which we wish to retrieve historical changes.
    * @param id The ID of class for which we wish to retrieve historical changes.
@@ -61,18 +72,7 @@ public abstract class BaseController {
    *               If null or empty, changes associated with any and all properties are returned.
    * @param page A Pageable object with PageNumber and PageSize values used for pagination.
    */
-  private String getAuditLogJson(Class type, UUID id, String author,
-      String changedPropertyName, Pageable page) {
-    List<Change> changes = getChangesByType(type, id, author, changedPropertyName, page);
-    JsonConverter jsonConverter = javers.getJsonConverter();
-    return jsonConverter.toJson(changes);
-  }
-
-
-  /*
-    Return JaVers changes for the specified type, optionally filtered by id, author, and property.
-  */
-  private List<Change> getChangesByType(Class type, UUID id, String author,
+  protected List<Change> getChangesByType(Class type, UUID id, String author,
       String changedPropertyName, Pageable page) {
     QueryBuilder queryBuilder = QueryBuilder.byInstanceId(id, type);
 
@@ -0,0 +1,266 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.PostConstruct;
+import org.openlmis.template.exception.ValidationMessageException;
+import org.openlmis.template.i18n.MessageKeys;
+import org.openlmis.template.util.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Remembers the responses of requests sent with an Idempotency-Key header, so a retried request
+ * gets the original response instead of being processed again.
+ *
+ * <p>A key is claimed by inserting it into the idempotency_keys table in the transaction that
+ * processes the request, and the response is stored in the same transaction. A concurrent
+ * request with the same key therefore waits for that transaction and then finds the stored
+ * response, on any instance of the service; if the transaction rolls back, the key is free
+ * again. Keys are scoped to the principal (client and user) that sent them, so different
+ * principals can use the same key independently. Keys are kept for at least
+ * {@code idempotency.ttl} milliseconds, and the most recently replayed ones are also kept in
+ * memory, so further retries do not reach the database.
+ */
+@Component
+public class IdempotencyKeyStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IdempotencyKeyStore.class);
+
+  public static final String HEADER = "Idempotency-Key";
+
+  static final int MAX_KEY_LENGTH = 255;
+
+  private static final String CLAIM_SQL = "INSERT INTO template.idempotency_keys"
+      + " (principal, idempotencykey, requesthash, createddate) VALUES (?, ?, ?, now())"
+      + " ON CONFLICT (principal, idempotencykey) DO NOTHING";
+  private static final String FIND_SQL = "SELECT requesthash, response, createddate"
+      + " FROM template.idempotency_keys WHERE principal = ? AND idempotencykey = ?";
+  private static final String COMPLETE_SQL = "UPDATE template.idempotency_keys"
+      + " SET response = ? WHERE principal = ? AND idempotencykey = ?";
+  private static final String PURGE_SQL = "DELETE FROM template.idempotency_keys"
+      + " WHERE createddate < now() - ? * INTERVAL '1 millisecond'";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${idempotency.ttl}")
+  private long ttl;
+
+  @Value("${idempotency.cacheSize}")
+  private int cacheSize;
+
+  // the global mapper may indent its output, which would only bloat the stored responses
+  private ObjectWriter compactWriter;
+
+  private Map<List<String>, StoredResponse> recent;
+
+  @PostConstruct
+  void init() {
+    compactWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+    recent = Collections.synchronizedMap(new RecentResponses(cacheSize));
+  }
+
+  /**
+   * Claims the given key for the current request, unless a request with this key has already
+   * been processed. Must be called in the transaction that processes the request, which must
+   * then store its response with {@link #complete(String, Object)}.
+   *
+   * @param key the value of the Idempotency-Key header.
+   * @param request the request body, used to detect a key that is reused for another request.
+   * @param responseType type of the stored response.
+   * @return the stored response of the request already processed with this key, or empty if
+   *         the key has been claimed for the current request.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public <T> Optional<T> claim(String key, Object request, Class<T> responseType) {
+    if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+      throw new ValidationMessageException(
+          new Message(MessageKeys.ERROR_IDEMPOTENCY_KEY_INVALID, MAX_KEY_LENGTH));
+    }
+
+    String requestHash = hash(toJson(request));
+    List<String> scopedKey = Arrays.asList(getPrincipal(), key);
+    StoredResponse stored = recent.get(scopedKey);
+
+    if (null == stored || stored.isExpired(ttl)) {
+      stored = claimOrFind(scopedKey, requestHash);
+
+      if (null == stored) {
+        return Optional.empty();
+      }
+
+      recent.put(scopedKey, stored);
+    }
+
+    if (!stored.requestHash.equals(requestHash)) {
+      throw new ValidationMessageException(MessageKeys.ERROR_IDEMPOTENCY_KEY_REUSED);
+    }
+
+    LOGGER.debug("Replaying response for idempotency key {}", key);
+    return Optional.of(fromJson(stored.response, responseType));
+  }
+
+  /**
+   * Stores the response of the request the given key has been claimed for.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void complete(String key, Object response) {
+    jdbcTemplate.update(COMPLETE_SQL, toJson(response), getPrincipal(), key);
+  }
+
+  /**
+   * Removes the keys older than the configured time to live.
+   */
+  @Scheduled(initialDelayString = "${idempotency.purgeInterval}",
+      fixedDelayString = "${idempotency.purgeInterval}")
+  public void purge() {
+    int purged = jdbcTemplate.update(PURGE_SQL, ttl);
+
+    synchronized (recent) {
+      recent.values().removeIf(stored -> stored.isExpired(ttl));
+    }
+
+    LOGGER.debug("Purged {} expired idempotency keys", purged);
+  }
+
+  // the key is a principal and an Idempotency-Key header value
+  private StoredResponse claimOrFind(List<String> scopedKey, String requestHash) {
+    String principal = scopedKey.get(0);
+    String key = scopedKey.get(1);
+
+    if (1 == jdbcTemplate.update(CLAIM_SQL, principal, key, requestHash)) {
+      return null;
+    }
+
+    List<StoredResponse> rows = jdbcTemplate.query(FIND_SQL, (rs, rowNum) -> new StoredResponse(
+        rs.getString("requesthash"), rs.getString("response"),
+        rs.getTimestamp("createddate").getTime()), principal, key);
+
+    if (rows.isEmpty()) {
+      // purged right after the conflict, so it can be claimed now
+      return claimOrFind(scopedKey, requestHash);
+    }
+
+    if (null == rows.get(0).response) {
+      throw new IllegalStateException("No response stored for idempotency key " + key);
+    }
+
+    return rows.get(0);
+  }
+
+  // the client and, unless it acts on its own behalf, the user the request was sent by
+  private String getPrincipal() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+    if (authentication instanceof OAuth2Authentication) {
+      OAuth2Authentication oauth = (OAuth2Authentication) authentication;
+      Authentication user = oauth.getUserAuthentication();
+
+      return oauth.getOAuth2Request().getClientId() + '/' + (null == user ? "" : user.getName());
+    }
+
+    return null == authentication ? "" : authentication.getName();
+  }
+
+  private String toJson(Object value) {
+    try {
+      return compactWriter.writeValueAsString(value);
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private <T> T fromJson(String json, Class<T> type) {
+    try {
+      return objectMapper.readValue(json, type);
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static String hash(String value) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return Base64.getEncoder()
+          .encodeToString(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static final class StoredResponse {
+    private final String requestHash;
+    private final String response;
+    private final long createdDate;
+
+    StoredResponse(String requestHash, String response, long createdDate) {
+      this.requestHash = requestHash;
+      this.response = response;
+      this.createdDate = createdDate;
+    }
+
+    boolean isExpired(long ttl) {
+      return System.currentTimeMillis() - createdDate > ttl;
+    }
+  }
+
+  // least recently used entries are evicted once the maximum size is exceeded
+  private static final class RecentResponses extends LinkedHashMap<List<String>, StoredResponse> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    RecentResponses(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<List<String>, StoredResponse> eldest) {
+      return size() > maxSize;
+    }
+  }
+
+}
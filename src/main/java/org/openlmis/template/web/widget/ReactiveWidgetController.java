@@ -0,0 +1,128 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web.widget;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.openlmis.template.domain.Widget;
+import org.openlmis.template.exception.NotFoundException;
+import org.openlmis.template.exception.ValidationMessageException;
+import org.openlmis.template.i18n.MessageKeys;
+import org.openlmis.template.repository.WidgetRepository;
+import org.openlmis.template.util.Message;
+import org.openlmis.template.web.BaseController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Controller used to expose Widgets via HTTP as reactive streams. The request thread is
+ * released as soon as the handler returns and the widgets are written as the client consumes
+ * them. The repository calls are still blocking JPA calls, so each of them holds a thread of
+ * the bounded elastic scheduler while it runs; this bounds memory, not the number of threads.
+ */
+@Controller
+@RequestMapping(ReactiveWidgetController.RESOURCE_PATH)
+public class ReactiveWidgetController extends BaseController {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveWidgetController.class);
+
+  public static final String RESOURCE_PATH = API_PATH + "/reactive/widgets";
+
+  // number of widgets fetched from the database at once when the client asks for more
+  static final int FETCH_SIZE = 500;
+
+  @Autowired
+  private WidgetRepository widgetRepository;
+
+  @Autowired
+  private WidgetIdFilter widgetIdFilter;
+
+  /**
+   * Streams all widgets as a sequence of JSON objects. The next batch of widgets is only fetched
+   * when the client has consumed the previous one, starting right after the last widget of the
+   * previous batch, so batches far into the results are as cheap as the first one.
+   *
+   * @param sort The order in which the widgets should be returned. The id is always used as
+   *             the last sort property, so the order is stable between the batches.
+   */
+  @GetMapping(produces = MediaType.APPLICATION_STREAM_JSON_VALUE)
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  public Flux<WidgetDto> getAllWidgets(Sort sort) {
+    LOGGER.debug("Streaming all widgets");
+
+    // once the stream has started, an error could no longer be returned as such
+    for (Sort.Order order : sort) {
+      if (!WidgetController.PROJECTABLE_FIELDS.contains(order.getProperty())) {
+        throw new ValidationMessageException(new Message(MessageKeys.ERROR_WIDGET_SORT_UNKNOWN,
+            order.getProperty(), String.join(", ", WidgetController.PROJECTABLE_FIELDS)));
+      }
+    }
+
+    return Flux
+        .<Slice<Widget>, Optional<Widget>>generate(Optional::empty, (after, sink) -> {
+          Slice<Widget> slice = widgetRepository.findAllAfter(after.orElse(null), sort,
+              FETCH_SIZE);
+          sink.next(slice);
+
+          if (!slice.hasNext()) {
+            sink.complete();
+            return after;
+          }
+
+          List<Widget> content = slice.getContent();
+          return Optional.of(content.get(content.size() - 1));
+        })
+        .concatMapIterable(Slice::getContent, 1)
+        .map(WidgetDto::newInstance)
+        .subscribeOn(Schedulers.boundedElastic());
+  }
+
+  /**
+   * Retrieves the specified widget.
+   */
+  @GetMapping(value = "/{id}")
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  public Mono<WidgetDto> getSpecifiedWidget(@PathVariable("id") UUID id) {
+    if (!widgetIdFilter.mightExist(id)) {
+      return Mono.error(new NotFoundException(MessageKeys.ERROR_WIDGET_NOT_FOUND));
+    }
+
+    return Mono
+        .fromCallable(() -> widgetRepository.findById(id))
+        .subscribeOn(Schedulers.boundedElastic())
+        .map(widget -> widget
+            .map(WidgetDto::newInstance)
+            .orElseThrow(() -> new NotFoundException(MessageKeys.ERROR_WIDGET_NOT_FOUND)));
+  }
+
+}
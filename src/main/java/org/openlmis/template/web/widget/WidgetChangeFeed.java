@@ -0,0 +1,122 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web.widget;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.annotation.PostConstruct;
+import org.openlmis.template.util.SequenceWatermark;
+import org.openlmis.template.web.widget.WidgetChangeDto.Type;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads the changes of widgets from the JaVers snapshots, which are written in the transaction
+ * of every widget creation, update and deletion. The primary key of a snapshot is used as the
+ * cursor, so a page of changes is read with a keyset query and its cost depends on the number
+ * of changes since the cursor, not on the number of widgets.
+ *
+ * <p>Snapshot keys are allocated before their transactions commit, so a snapshot with a lower
+ * key may become visible after one with a higher key. To avoid skipping it, only snapshots up
+ * to the {@link SequenceWatermark} of the key sequence are returned; it is advanced on every
+ * request and every {@code widget.changes.watermarkInterval} milliseconds.
+ */
+@Component
+public class WidgetChangeFeed {
+
+  private static final String TYPE_NAME = "Widget";
+
+  private static final String FIND_SQL = "SELECT s.snapshot_pk, s.type, s.state, g.local_id"
+      + " FROM template.jv_snapshot s"
+      + " JOIN template.jv_global_id g ON g.global_id_pk = s.global_id_fk"
+      + " WHERE s.snapshot_pk > ? AND s.snapshot_pk <= ? AND g.type_name = ?"
+      + " ORDER BY s.snapshot_pk"
+      + " LIMIT ?";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  private SequenceWatermark watermark;
+
+  @PostConstruct
+  public void init() {
+    // JaVers writes the commit before the snapshots, so their transactions have an id already
+    watermark = new SequenceWatermark(jdbcTemplate, "template.jv_snapshot_pk_seq");
+  }
+
+  /**
+   * Advances the snapshot key up to which changes are returned, so changes committed while no
+   * requests are made become available without delay.
+   */
+  @Scheduled(fixedDelayString = "${widget.changes.watermarkInterval}")
+  public long updateWatermark() {
+    return watermark.update();
+  }
+
+  /**
+   * Returns up to the given number of widget changes made after the given cursor, oldest first.
+   * Changes whose transactions may still be followed by ones with lower cursors are held back.
+   */
+  public WidgetChangePageDto getChanges(long since, int size) {
+    long until = updateWatermark();
+
+    return jdbcTemplate.query(FIND_SQL, rs -> {
+      List<WidgetChangeDto> changes = new ArrayList<>();
+      boolean last = true;
+
+      while (rs.next()) {
+        if (changes.size() == size) {
+          last = false;
+          break;
+        }
+        changes.add(toChange(rs));
+      }
+
+      long nextCursor = changes.isEmpty() ? since : changes.get(changes.size() - 1).getCursor();
+      return new WidgetChangePageDto(changes, nextCursor, last);
+    }, since, until, TYPE_NAME, size + 1);
+  }
+
+  private WidgetChangeDto toChange(ResultSet rs) throws SQLException {
+    try {
+      UUID id = objectMapper.readValue(rs.getString("local_id"), UUID.class);
+
+      switch (rs.getString("type")) {
+        case "INITIAL":
+          return new WidgetChangeDto(rs.getLong("snapshot_pk"), Type.CREATED, id,
+              objectMapper.readValue(rs.getString("state"), WidgetDto.class));
+        case "TERMINAL":
+          return new WidgetChangeDto(rs.getLong("snapshot_pk"), Type.DELETED, id, null);
+        default:
+          return new WidgetChangeDto(rs.getLong("snapshot_pk"), Type.UPDATED, id,
+              objectMapper.readValue(rs.getString("state"), WidgetDto.class));
+      }
+    } catch (IOException ex) {
+      throw new IllegalStateException("Could not read widget snapshot", ex);
+    }
+  }
+
+}
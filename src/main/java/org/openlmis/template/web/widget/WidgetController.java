@@ -15,37 +15,68 @@
 
 package org.openlmis.template.web.widget;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.javers.core.diff.Change;
 import org.openlmis.template.domain.Widget;
+import org.openlmis.template.event.WidgetEvent;
+import org.openlmis.template.event.WidgetEventBroadcaster;
+import org.openlmis.template.event.WidgetEventOutbox;
 import org.openlmis.template.exception.NotFoundException;
+import org.openlmis.template.exception.PreconditionFailedException;
 import org.openlmis.template.exception.ValidationMessageException;
 import org.openlmis.template.i18n.MessageKeys;
 import org.openlmis.template.repository.WidgetRepository;
-import org.openlmis.template.util.Pagination;
+import org.openlmis.template.util.ETags;
+import org.openlmis.template.util.Message;
+import org.openlmis.template.util.SingleFlight;
 import org.openlmis.template.web.BaseController;
+import org.openlmis.template.web.IdempotencyKeyStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * Controller used to expose Widgets via HTTP.
@@ -59,96 +90,363 @@ public class WidgetController extends BaseController {
 
   public static final String RESOURCE_PATH = API_PATH + "/widgets";
 
+  public static final String MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+
+  private static final String LAST_EVENT_ID = "Last-Event-ID";
+
+  static final List<String> PROJECTABLE_FIELDS =
+      Collections.unmodifiableList(Arrays.asList("id", "name", "code"));
+
   @Autowired
   private WidgetRepository widgetRepository;
 
+  @Autowired
+  private WidgetReader widgetReader;
+
+  @Autowired
+  private WidgetStreamingWriter widgetStreamingWriter;
+
+  @Autowired
+  private WidgetIdFilter widgetIdFilter;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private IdempotencyKeyStore idempotencyKeyStore;
+
+  @Autowired
+  private WidgetChangeFeed widgetChangeFeed;
+
+  @Autowired
+  private WidgetEventOutbox widgetEventOutbox;
+
+  @Autowired
+  private WidgetEventBroadcaster widgetEventBroadcaster;
+
+  @Autowired
+  private ContentNegotiationManager contentNegotiationManager;
+
+  @Value("${pagination.maxPageSize}")
+  private int maxPageSize;
+
+  // concurrent identical reads share a single database fetch; the readers wait outside of any
+  // transaction, so they do not hold database connections in the meantime
+  private final SingleFlight<UUID, Optional<WidgetDto>> widgetReads = new SingleFlight<>();
+  private final SingleFlight<List<Object>, Slice<WidgetDto>> widgetListReads =
+      new SingleFlight<>();
+
   /**
    * Allows the creation of a new widget. If the id is specified, it will be ignored.
+   *
+   * @param idempotencyKey Optional unique key of the request, so it can be retried safely. If
+   *                       a request with the same key has already created a widget, that
+   *                       response is returned again and no widget is created.
    */
   @PostMapping
   @ResponseStatus(HttpStatus.CREATED)
   @ResponseBody
-  public WidgetDto createWidget(@RequestBody WidgetDto widget) {
+  public WidgetDto createWidget(
+      @RequestHeader(name = IdempotencyKeyStore.HEADER, required = false) String idempotencyKey,
+      @RequestBody WidgetDto widget) {
+    if (null != idempotencyKey) {
+      Optional<WidgetDto> stored = idempotencyKeyStore
+          .claim(idempotencyKey, widget, WidgetDto.class);
+
+      if (stored.isPresent()) {
+        return stored.get();
+      }
+    }
+
     LOGGER.debug("Creating new widget");
     Widget newWidget = Widget.newInstance(widget);
     newWidget.setId(null);
     newWidget = widgetRepository.saveAndFlush(newWidget);
+    widgetIdFilter.add(newWidget.getId());
+
+    WidgetDto created = WidgetDto.newInstance(newWidget);
+    widgetEventOutbox.append(WidgetEvent.Type.CREATED, created.getId(), created);
+    forgetReadsAfterCommit(created.getId());
+
+    if (null != idempotencyKey) {
+      idempotencyKeyStore.complete(idempotencyKey, created);
+    }
 
-    return WidgetDto.newInstance(newWidget);
+    return created;
   }
 
   /**
-   * Updates the specified widget.
+   * Updates the specified widget, or creates it if it does not exist.
+   *
+   * @param ifMatch Optional entity tags (as returned in the ETag header) of the widget versions
+   *                the update is based on. If given, the widget is only updated if its current
+   *                version is one of them, and never created; "*" matches any existing widget.
+   *                Otherwise the update fails with 412 Precondition Failed.
    */
   @PutMapping(value = "/{id}")
   @ResponseStatus(HttpStatus.OK)
   @ResponseBody
-  public WidgetDto saveWidget(@PathVariable("id") UUID id, @RequestBody WidgetDto widget) {
+  public ResponseEntity<WidgetDto> saveWidget(@PathVariable("id") UUID id,
+      @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+      @RequestBody WidgetDto widget) {
     if (null != widget.getId() && !Objects.equals(widget.getId(), id)) {
       throw new ValidationMessageException(MessageKeys.ERROR_WIDGET_ID_MISMATCH);
     }
 
     LOGGER.debug("Updating widget");
-    Widget db;
-    Optional<Widget> widgetOptional = widgetRepository.findById(id);
-    if (widgetOptional.isPresent()) {
-      db = widgetOptional.get();
-      db.updateFrom(widget);
-    } else {
-      db = Widget.newInstance(widget);
-      db.setId(id);
+    Widget db = Widget.newInstance(widget);
+    db.setId(id);
+
+    if (null == ifMatch) {
+      widgetRepository.upsert(db);
+    } else if (!widgetRepository.update(db, getExpectedVersions(ifMatch))) {
+      throw new PreconditionFailedException(MessageKeys.ERROR_WIDGET_VERSION_MISMATCH);
     }
+    widgetIdFilter.add(id);
 
-    widgetRepository.saveAndFlush(db);
+    WidgetDto saved = WidgetDto.newInstance(db);
+    // an upsert that inserted the widget leaves it at the initial version
+    widgetEventOutbox.append(null == ifMatch && Objects.equals(db.getVersion(), 0L)
+        ? WidgetEvent.Type.CREATED
+        : WidgetEvent.Type.UPDATED, id, saved);
+    forgetReadsAfterCommit(id);
 
-    return WidgetDto.newInstance(db);
+    return toResponse(saved);
+  }
+
+  /**
+   * Partially updates the specified widget with a JSON Merge Patch (RFC 7396): fields present in
+   * the patch replace the current values, fields set to null are cleared and all other fields
+   * are left as they are. Only the changed columns are updated in the database and only the
+   * changed properties are recorded in the audit log. A patch that changes nothing leaves the
+   * widget and its version as they are and emits no event.
+   *
+   * @param ifMatch Optional entity tags of the widget versions the patch is based on. If the
+   *                current version is not one of them, the patch fails with 412 Precondition
+   *                Failed.
+   */
+  @PatchMapping(value = "/{id}", consumes = MERGE_PATCH_JSON_VALUE)
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  public ResponseEntity<WidgetDto> patchWidget(@PathVariable("id") UUID id,
+      @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+      @RequestBody ObjectNode patch) {
+    Optional<Widget> found = widgetIdFilter.mightExist(id)
+        ? widgetRepository.findById(id)
+        : Optional.empty();
+
+    if (null != ifMatch) {
+      Collection<Long> versions = getExpectedVersions(ifMatch);
+
+      if (!found.isPresent()
+          || !versions.isEmpty() && !versions.contains(found.get().getVersion())) {
+        throw new PreconditionFailedException(MessageKeys.ERROR_WIDGET_VERSION_MISMATCH);
+      }
+    }
+
+    Widget widget = found
+        .orElseThrow(() -> new NotFoundException(MessageKeys.ERROR_WIDGET_NOT_FOUND));
+    WidgetDto patched = WidgetDto.newInstance(widget);
+
+    try {
+      objectMapper.readerForUpdating(patched).readValue(patch);
+    } catch (IOException ex) {
+      throw new ValidationMessageException(ex, MessageKeys.ERROR_WIDGET_PATCH_INVALID,
+          ex.getMessage());
+    }
+
+    if (null != patched.getId() && !Objects.equals(patched.getId(), id)) {
+      throw new ValidationMessageException(MessageKeys.ERROR_WIDGET_ID_MISMATCH);
+    }
+
+    // nothing is written for a patch that changes nothing, so no event is emitted either
+    if (Objects.equals(widget.getName(), patched.getName())
+        && Objects.equals(widget.getCode(), patched.getCode())) {
+      return toResponse(WidgetDto.newInstance(widget));
+    }
+
+    LOGGER.debug("Patching widget");
+    // the widget is managed, so only the properties that actually changed are flushed
+    widget.updateFrom(patched);
+    widget = widgetRepository.saveAndFlush(widget);
+
+    WidgetDto saved = WidgetDto.newInstance(widget);
+    widgetEventOutbox.append(WidgetEvent.Type.UPDATED, id, saved);
+    forgetReadsAfterCommit(id);
+
+    return toResponse(saved);
   }
 
   /**
    * Deletes the specified widget.
+   *
+   * @param ifMatch Optional entity tags of the widget versions that may be deleted. If the
+   *                current version is not one of them, the deletion fails with 412
+   *                Precondition Failed.
    */
   @DeleteMapping(value = "/{id}")
   @ResponseStatus(HttpStatus.NO_CONTENT)
-  public void deleteWidget(@PathVariable("id") UUID id) {
-    if (!widgetRepository.existsById(id)) {
-      throw new NotFoundException(MessageKeys.ERROR_WIDGET_NOT_FOUND);
+  public void deleteWidget(@PathVariable("id") UUID id,
+      @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    if (null == ifMatch) {
+      if (!widgetIdFilter.mightExist(id) || !widgetRepository.removeById(id)) {
+        throw new NotFoundException(MessageKeys.ERROR_WIDGET_NOT_FOUND);
+      }
+    } else if (!widgetIdFilter.mightExist(id)
+        || !widgetRepository.removeById(id, getExpectedVersions(ifMatch))) {
+      throw new PreconditionFailedException(MessageKeys.ERROR_WIDGET_VERSION_MISMATCH);
     }
 
-    widgetRepository.deleteById(id);
+    widgetEventOutbox.append(WidgetEvent.Type.DELETED, id, Collections.singletonMap("id", id));
+    forgetReadsAfterCommit(id);
   }
 
   /**
    * Retrieves all widgets. Note that an empty collection rather than a 404 should be
    * returned if no widgets exist.
+   *
+   * @param withTotal Controls how the total number of widgets is calculated: "true" (default)
+   *                  counts them exactly, "approximate" uses the planner statistics instead and
+   *                  "false" skips counting and returns a slice with just the "last" flag.
+   *                  Ignored for pages bigger than the maximum page size, which are streamed
+   *                  as JSON (with the exact total) instead of being loaded into memory; if the
+   *                  client does not accept JSON, they are rejected with 406 Not Acceptable.
    */
   @GetMapping
   @ResponseStatus(HttpStatus.OK)
   @ResponseBody
-  public Page<WidgetDto> getAllWidgets(Pageable pageable) {
-    Page<Widget> page = widgetRepository.findAll(pageable);
-    List<WidgetDto> content = page
-        .getContent()
-        .stream()
-        .map(WidgetDto::newInstance)
-        .collect(Collectors.toList());
-    return Pagination.getPage(content, pageable, page.getTotalElements());
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public Slice<WidgetDto> getAllWidgets(
+      @RequestParam(name = "withTotal", required = false, defaultValue = WidgetReader.EXACT_TOTAL)
+          String withTotal, Pageable pageable, HttpServletRequest request,
+      HttpServletResponse response) throws IOException, HttpMediaTypeNotAcceptableException {
+    if (!WidgetReader.EXACT_TOTAL.equals(withTotal) && !WidgetReader.NO_TOTAL.equals(withTotal)
+        && !WidgetReader.APPROXIMATE_TOTAL.equals(withTotal)) {
+      throw new ValidationMessageException(
+          new Message(MessageKeys.ERROR_WIDGET_WITH_TOTAL_INVALID, withTotal));
+    }
+
+    // this includes unpaged requests
+    if (pageable.getPageSize() > maxPageSize) {
+      checkStreamingAcceptable(request);
+      widgetStreamingWriter.write(pageable, response);
+      return null;
+    }
+
+    // a conditional request wants to know about the latest state, not one read before it came
+    if (null != request.getHeader(HttpHeaders.IF_NONE_MATCH)) {
+      return widgetReader.findWidgets(withTotal, pageable);
+    }
+
+    return widgetListReads.execute(Arrays.asList(withTotal, pageable),
+        () -> widgetReader.findWidgets(withTotal, pageable));
   }
 
   /**
-   * Retrieves the specified widget.
+   * Retrieves all widgets with only the requested fields, e.g. {@code ?fields=id,code}. Only the
+   * columns backing these fields are selected from the database and no entities are loaded.
+   * An empty list of fields is treated as a request for all of them. The widgets can only be
+   * sorted by these fields too. Pages bigger than the maximum page size are streamed as JSON.
+   */
+  @GetMapping(params = "fields")
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  @Transactional(readOnly = true)
+  public Page<Map<String, Object>> getAllWidgetProjections(
+      @RequestParam("fields") Set<String> fields, Pageable pageable, HttpServletRequest request,
+      HttpServletResponse response) throws IOException, HttpMediaTypeNotAcceptableException {
+    Collection<String> selected = fields.isEmpty() ? PROJECTABLE_FIELDS : fields;
+
+    for (String field : selected) {
+      if (!PROJECTABLE_FIELDS.contains(field)) {
+        throw new ValidationMessageException(new Message(MessageKeys.ERROR_WIDGET_FIELD_UNKNOWN,
+            field, String.join(", ", PROJECTABLE_FIELDS)));
+      }
+    }
+
+    // the criteria API would fail with a server error on unknown properties
+    for (Sort.Order order : pageable.getSort()) {
+      if (!PROJECTABLE_FIELDS.contains(order.getProperty())) {
+        throw new ValidationMessageException(new Message(MessageKeys.ERROR_WIDGET_SORT_UNKNOWN,
+            order.getProperty(), String.join(", ", PROJECTABLE_FIELDS)));
+      }
+    }
+
+    if (pageable.getPageSize() > maxPageSize) {
+      checkStreamingAcceptable(request);
+      widgetStreamingWriter.writeProjected(selected, pageable, response);
+      return null;
+    }
+
+    return widgetRepository.findAllProjected(selected, pageable);
+  }
+
+  /**
+   * Retrieves the changes of widgets (creations, updates and deletions) made after the given
+   * cursor, oldest first, so a copy of the widgets can be kept in sync without reading all of
+   * them again. Pass the returned "nextCursor" as "since" to get the following changes.
+   *
+   * @param since Cursor of the last change already known; 0 (default) returns all changes.
+   * @param size Maximum number of changes to return, capped at the maximum page size.
+   */
+  @GetMapping(value = "/changes")
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public WidgetChangePageDto getWidgetChanges(
+      @RequestParam(name = "since", required = false, defaultValue = "0") long since,
+      @RequestParam(name = "size", required = false, defaultValue = "500") int size) {
+    return widgetChangeFeed.getChanges(since, Math.max(1, Math.min(size, maxPageSize)));
+  }
+
+  /**
+   * Streams the changes of widgets as server-sent events, in the order of their ids, as soon as
+   * no change with a lower id can still be committed. Each event is named after the type of the
+   * change (CREATED, UPDATED or DELETED) and carries the widget (just its id for deletions).
+   * Clients that cannot keep up are disconnected.
+   *
+   * @param lastEventId Optional id of the last event the client has received, sent by browsers
+   *                    when they reconnect. The stream then starts with all events missed
+   *                    since, or only carries a RESET event if some of them have been compacted
+   *                    already; use the change feed to catch up then.
+   */
+  @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  public SseEmitter getWidgetEvents(
+      @RequestHeader(name = LAST_EVENT_ID, required = false) Long lastEventId) {
+    return widgetEventBroadcaster.subscribe(lastEventId);
+  }
+
+  /**
+   * Retrieves the specified widget. Its version is returned in the ETag header too.
+   *
+   * @param ifNoneMatch Optional entity tags of the widget versions the client already has. If
+   *                    the current version is one of them, 304 Not Modified is returned.
    */
   @GetMapping(value = "/{id}")
   @ResponseStatus(HttpStatus.OK)
   @ResponseBody
-  public WidgetDto getSpecifiedWidget(@PathVariable("id") UUID id) {
-    Widget widget = widgetRepository.findById(id)
-        .orElseThrow(() -> new NotFoundException(MessageKeys.ERROR_WIDGET_NOT_FOUND));
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public ResponseEntity<WidgetDto> getSpecifiedWidget(@PathVariable("id") UUID id,
+      @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    if (!widgetIdFilter.mightExist(id)) {
+      throw new NotFoundException(MessageKeys.ERROR_WIDGET_NOT_FOUND);
+    }
 
-    return WidgetDto.newInstance(widget);
+    // a conditional request wants to know about the latest state, not one read before it came
+    Optional<WidgetDto> widget = null == ifNoneMatch
+        ? widgetReads.execute(id, () -> widgetReader.findWidget(id))
+        : widgetReader.findWidget(id);
+
+    return widget
+        .map(this::toResponse)
+        .orElseThrow(() -> new NotFoundException(MessageKeys.ERROR_WIDGET_NOT_FOUND));
   }
 
   /**
-   * Retrieves audit information related to the specified widget.
+   * Retrieves audit information related to the specified widget. The audit log of a deleted
+   * widget, which ends with its deletion, remains available.
    *
    * @param author The author of the changes which should be returned.
    *               If null or empty, changes are returned regardless of author.
@@ -160,17 +458,73 @@ public class WidgetController extends BaseController {
   @GetMapping(value = "/{id}/auditLog")
   @ResponseStatus(HttpStatus.OK)
   @ResponseBody
+  @Transactional(readOnly = true)
   public ResponseEntity<String> getWidgetAuditLog(@PathVariable("id") UUID id,
       @RequestParam(name = "author", required = false, defaultValue = "") String author,
       @RequestParam(name = "changedPropertyName", required = false, defaultValue = "")
           String changedPropertyName, Pageable page) {
 
-    //Return a 404 if the specified instance can't be found
-    if (!widgetRepository.existsById(id)) {
+    // the id filter is not consulted: it drops deleted widgets, whose log remains available
+    List<Change> changes = getChangesByType(Widget.class, id, author, changedPropertyName, page);
+
+    //Return a 404 if the specified instance can't be found; an existing widget always has
+    //changes unless they were all filtered out, so the database is only checked then
+    if (changes.isEmpty() && !widgetRepository.existsById(id)) {
       throw new NotFoundException(MessageKeys.ERROR_WIDGET_NOT_FOUND);
     }
 
-    return getAuditLogResponse(Widget.class, id, author, changedPropertyName, page);
+    return getAuditLogResponse(changes);
+  }
+
+  // reads that are in flight when the write commits may have missed it, so requests coming
+  // after the write must not share them
+  private void forgetReadsAfterCommit(UUID id) {
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            widgetReads.forget(id);
+            widgetListReads.forgetAll();
+          }
+        });
+  }
+
+  // big pages are only streamed as JSON
+  private void checkStreamingAcceptable(HttpServletRequest request)
+      throws HttpMediaTypeNotAcceptableException {
+    List<MediaType> acceptable = contentNegotiationManager
+        .resolveMediaTypes(new ServletWebRequest(request));
+
+    if (acceptable.stream().noneMatch(MediaType.APPLICATION_JSON::isCompatibleWith)) {
+      throw new HttpMediaTypeNotAcceptableException(
+          Collections.singletonList(MediaType.APPLICATION_JSON));
+    }
+  }
+
+  // an empty collection matches any version
+  private Collection<Long> getExpectedVersions(String ifMatch) {
+    if (ETags.isAny(ifMatch)) {
+      return Collections.emptySet();
+    }
+
+    Set<Long> versions = ETags.parseVersions(ifMatch);
+
+    if (versions.isEmpty()) {
+      throw new PreconditionFailedException(MessageKeys.ERROR_WIDGET_VERSION_MISMATCH);
+    }
+
+    return versions;
+  }
+
+  // a widget without a version (e.g. one that has never been flushed) has no entity tag
+  private ResponseEntity<WidgetDto> toResponse(WidgetDto widget) {
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+    if (null != widget.getVersion()) {
+      response.eTag(ETags.fromVersion(widget.getVersion()));
+    }
+
+    return response.body(widget);
   }
 
 }
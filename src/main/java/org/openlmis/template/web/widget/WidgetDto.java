@@ -33,6 +33,7 @@ import org.openlmis.template.web.BaseDto;
 public final class WidgetDto extends BaseDto implements Widget.Importer, Widget.Exporter {
   private String name;
   private String code;
+  private Long version;
 
   /**
    * Creates new instance based on domain object.
@@ -0,0 +1,162 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web.widget;
+
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.openlmis.template.repository.WidgetRepository;
+import org.openlmis.template.util.UuidBloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps a Bloom filter of all widget ids, so lookups of ids that do not exist are checked with
+ * a cheap existence query instead of loading the widget. The filter is built from the database
+ * at startup and then periodically, which also drops the ids of deleted widgets.
+ *
+ * <p>Widgets created by other instances of the service are added when their events are passed
+ * on by the {@link org.openlmis.template.event.WidgetEventListener}. Until then the filter does
+ * not contain them, which is why every id it rules out is confirmed in the database.
+ */
+@Component
+public class WidgetIdFilter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WidgetIdFilter.class);
+
+  private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+  private static final long MIN_EXPECTED_INSERTIONS = 10_000;
+
+  @Value("${widget.idFilter.enabled}")
+  private boolean enabled;
+
+  @Autowired
+  private WidgetRepository widgetRepository;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  // null until the first build is done, which makes every id a possible one
+  private volatile UuidBloomFilter filter;
+
+  // the filter being built, which must also receive the ids added in the meantime
+  private volatile UuidBloomFilter next;
+
+  /**
+   * Returns false if there is no widget with the given id. An id the filter does not contain is
+   * looked up in the database, since the widget may have been created by another instance, and
+   * added to the filter if it is found there.
+   */
+  public boolean mightExist(UUID id) {
+    UuidBloomFilter current = filter;
+    if (null == current || current.mightContain(id)) {
+      return true;
+    }
+
+    if (!widgetRepository.existsById(id)) {
+      return false;
+    }
+
+    put(id);
+    return true;
+  }
+
+  /**
+   * Records the id of a saved widget. The id is added right away and again once the
+   * current transaction commits, so a rebuild running in the meantime cannot miss it.
+   */
+  public void add(UUID id) {
+    if (!enabled) {
+      return;
+    }
+
+    put(id);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              put(id);
+            }
+          });
+    }
+  }
+
+  /**
+   * Builds a new filter from the ids of all widgets, streamed from the database, and replaces
+   * the current filter with it.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(initialDelayString = "${widget.idFilter.rebuildInterval}",
+      fixedDelayString = "${widget.idFilter.rebuildInterval}")
+  public synchronized void rebuild() {
+    if (!enabled) {
+      return;
+    }
+
+    long expectedInsertions = Math.max(MIN_EXPECTED_INSERTIONS, 2 * widgetRepository.count());
+    UuidBloomFilter rebuilt = UuidBloomFilter
+        .create(expectedInsertions, FALSE_POSITIVE_PROBABILITY);
+
+    // not read-only, so the ids are read from the primary even if reads go to a replica, which
+    // might not have the widgets saved just before the rebuild started yet
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+    next = rebuilt;
+    try {
+      Long count = transaction.execute(status -> {
+        long added = 0;
+        try (Stream<UUID> ids = widgetRepository.streamAllIds()) {
+          for (Iterator<UUID> iterator = ids.iterator(); iterator.hasNext(); added++) {
+            rebuilt.put(iterator.next());
+          }
+        }
+        return added;
+      });
+
+      filter = rebuilt;
+      LOGGER.info("Built widget id filter with {} ids", count);
+    } finally {
+      next = null;
+    }
+  }
+
+  // the filter being built is read first: a rebuild replaces the filter before it clears next,
+  // so the id is put into the rebuilt filter either way
+  private void put(UUID id) {
+    UuidBloomFilter building = next;
+    if (null != building) {
+      building.put(id);
+    }
+
+    UuidBloomFilter current = filter;
+    if (null != current) {
+      current.put(id);
+    }
+  }
+
+}
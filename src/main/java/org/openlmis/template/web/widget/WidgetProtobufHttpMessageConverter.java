@@ -0,0 +1,219 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web.widget;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.UUID;
+import org.springframework.core.ResolvableType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+/**
+ * Reads and writes widgets (and pages of them) in the Protocol Buffers wire format described by
+ * {@code widget.proto}. The encoding is done by hand with the protobuf coded streams, so no
+ * generated classes or reflection are involved.
+ */
+public class WidgetProtobufHttpMessageConverter
+    extends AbstractGenericHttpMessageConverter<Object> {
+
+  public static final MediaType APPLICATION_PROTOBUF = new MediaType("application", "x-protobuf");
+
+  // field numbers of the Widget message
+  static final int WIDGET_ID = 1;
+  static final int WIDGET_NAME = 2;
+  static final int WIDGET_CODE = 3;
+  static final int WIDGET_VERSION = 4;
+
+  // field numbers of the WidgetPage message
+  static final int PAGE_CONTENT = 1;
+  static final int PAGE_TOTAL_ELEMENTS = 2;
+  static final int PAGE_TOTAL_PAGES = 3;
+  static final int PAGE_SIZE = 4;
+  static final int PAGE_NUMBER = 5;
+  static final int PAGE_NUMBER_OF_ELEMENTS = 6;
+  static final int PAGE_FIRST = 7;
+  static final int PAGE_LAST = 8;
+
+  public WidgetProtobufHttpMessageConverter() {
+    super(APPLICATION_PROTOBUF);
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return WidgetDto.class.isAssignableFrom(clazz) || Slice.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+    return WidgetDto.class.equals(type) && canRead(mediaType);
+  }
+
+  @Override
+  public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+    if (!canWrite(mediaType)) {
+      return false;
+    }
+
+    if (WidgetDto.class.isAssignableFrom(clazz)) {
+      return true;
+    }
+
+    // the page content type is known only from the declared (generic) return type
+    return Slice.class.isAssignableFrom(clazz) && null != type
+        && WidgetDto.class.equals(ResolvableType.forType(type).as(Slice.class).resolveGeneric(0));
+  }
+
+  @Override
+  public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage)
+      throws IOException {
+    return readInternal(WidgetDto.class, inputMessage);
+  }
+
+  @Override
+  protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage)
+      throws IOException {
+    CodedInputStream input = CodedInputStream.newInstance(inputMessage.getBody());
+    WidgetDto widget = new WidgetDto();
+
+    try {
+      for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+        int fieldNumber = WireFormat.getTagFieldNumber(tag);
+
+        // a known field with another wire type (e.g. from a newer schema) is skipped as unknown
+        if (WireFormat.getTagWireType(tag) != getWidgetWireType(fieldNumber)) {
+          input.skipField(tag);
+          continue;
+        }
+
+        switch (fieldNumber) {
+          case WIDGET_ID:
+            widget.setId(UUID.fromString(input.readString()));
+            break;
+          case WIDGET_NAME:
+            widget.setName(input.readString());
+            break;
+          case WIDGET_CODE:
+            widget.setCode(input.readString());
+            break;
+          case WIDGET_VERSION:
+            widget.setVersion(input.readInt64());
+            break;
+          default:
+            input.skipField(tag);
+            break;
+        }
+      }
+    } catch (IllegalArgumentException ex) {
+      throw new HttpMessageNotReadableException(
+          "Could not read widget: " + ex.getMessage(), ex, inputMessage);
+    }
+
+    return widget;
+  }
+
+  // the wire type of the given field of the Widget message, or -1 for unknown fields
+  private int getWidgetWireType(int fieldNumber) {
+    switch (fieldNumber) {
+      case WIDGET_ID:
+      case WIDGET_NAME:
+      case WIDGET_CODE:
+        return WireFormat.WIRETYPE_LENGTH_DELIMITED;
+      case WIDGET_VERSION:
+        return WireFormat.WIRETYPE_VARINT;
+      default:
+        return -1;
+    }
+  }
+
+  @Override
+  protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+      throws IOException {
+    CodedOutputStream output = CodedOutputStream.newInstance(outputMessage.getBody());
+
+    if (object instanceof WidgetDto) {
+      writeWidgetFields(output, (WidgetDto) object);
+    } else {
+      writePage(output, (Slice<?>) object);
+    }
+
+    output.flush();
+  }
+
+  private void writePage(CodedOutputStream output, Slice<?> page) throws IOException {
+    for (Object element : page.getContent()) {
+      WidgetDto widget = (WidgetDto) element;
+      output.writeTag(PAGE_CONTENT, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      output.writeUInt32NoTag(computeWidgetSize(widget));
+      writeWidgetFields(output, widget);
+    }
+
+    // totals are not known for slices (withTotal=false)
+    if (page instanceof Page) {
+      output.writeInt64(PAGE_TOTAL_ELEMENTS, ((Page<?>) page).getTotalElements());
+      output.writeInt32(PAGE_TOTAL_PAGES, ((Page<?>) page).getTotalPages());
+    }
+
+    output.writeInt32(PAGE_SIZE, page.getSize());
+    output.writeInt32(PAGE_NUMBER, page.getNumber());
+    output.writeInt32(PAGE_NUMBER_OF_ELEMENTS, page.getNumberOfElements());
+    output.writeBool(PAGE_FIRST, page.isFirst());
+    output.writeBool(PAGE_LAST, page.isLast());
+  }
+
+  private void writeWidgetFields(CodedOutputStream output, WidgetDto widget) throws IOException {
+    if (null != widget.getId()) {
+      output.writeString(WIDGET_ID, widget.getId().toString());
+    }
+    if (null != widget.getName()) {
+      output.writeString(WIDGET_NAME, widget.getName());
+    }
+    if (null != widget.getCode()) {
+      output.writeString(WIDGET_CODE, widget.getCode());
+    }
+    if (null != widget.getVersion()) {
+      output.writeInt64(WIDGET_VERSION, widget.getVersion());
+    }
+  }
+
+  private int computeWidgetSize(WidgetDto widget) {
+    int size = 0;
+
+    if (null != widget.getId()) {
+      size += CodedOutputStream.computeStringSize(WIDGET_ID, widget.getId().toString());
+    }
+    if (null != widget.getName()) {
+      size += CodedOutputStream.computeStringSize(WIDGET_NAME, widget.getName());
+    }
+    if (null != widget.getCode()) {
+      size += CodedOutputStream.computeStringSize(WIDGET_CODE, widget.getCode());
+    }
+    if (null != widget.getVersion()) {
+      size += CodedOutputStream.computeInt64Size(WIDGET_VERSION, widget.getVersion());
+    }
+
+    return size;
+  }
+
+}
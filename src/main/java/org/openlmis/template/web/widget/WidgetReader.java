@@ -0,0 +1,95 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web.widget;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.openlmis.template.domain.Widget;
+import org.openlmis.template.repository.WidgetRepository;
+import org.openlmis.template.util.Pagination;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Reads widgets in short read-only transactions and returns them as DTOs, which are not attached
+ * to any persistence context and can be shared between threads. The controller coalesces
+ * concurrent identical reads around these methods, so threads waiting for another one's read
+ * do not hold a database connection in the meantime.
+ */
+@Component
+public class WidgetReader {
+
+  static final String EXACT_TOTAL = "true";
+  static final String NO_TOTAL = "false";
+  static final String APPROXIMATE_TOTAL = "approximate";
+
+  @Autowired
+  private WidgetRepository widgetRepository;
+
+  @Transactional(readOnly = true)
+  public Optional<WidgetDto> findWidget(UUID id) {
+    return widgetRepository.findById(id).map(WidgetDto::newInstance);
+  }
+
+  /**
+   * Returns a page of widgets, with the total calculated as requested by withTotal ("true",
+   * "approximate" or "false").
+   */
+  @Transactional(readOnly = true)
+  public Slice<WidgetDto> findWidgets(String withTotal, Pageable pageable) {
+    // a slice is fetched with size + 1 rows, which cannot be done for unpaged requests
+    if (EXACT_TOTAL.equals(withTotal) || pageable.getPageSize() == Pagination.NO_PAGINATION) {
+      Page<Widget> page = widgetRepository.findAllReadOnly(pageable);
+      return Pagination.getPage(toDtos(page), pageable, page.getTotalElements());
+    }
+
+    Slice<Widget> slice = widgetRepository.findAllBy(pageable);
+
+    if (APPROXIMATE_TOTAL.equals(withTotal)) {
+      return Pagination.getPage(toDtos(slice), pageable, getApproximateTotal(slice, pageable));
+    }
+
+    return new SliceImpl<>(toDtos(slice), pageable, slice.hasNext());
+  }
+
+  // the estimate can be off, e.g. it is 0 until the table is analyzed for the first time, so it
+  // is kept consistent with the slice: a page that has a next one must not be the last one
+  private long getApproximateTotal(Slice<Widget> slice, Pageable pageable) {
+    long fetched = pageable.getOffset() + slice.getNumberOfElements();
+
+    if (!slice.hasNext() && slice.hasContent()) {
+      return fetched;
+    }
+
+    return Math.max(widgetRepository.estimateCount(), fetched + (slice.hasNext() ? 1 : 0));
+  }
+
+  private List<WidgetDto> toDtos(Slice<Widget> widgets) {
+    return widgets
+        .getContent()
+        .stream()
+        .map(WidgetDto::newInstance)
+        .collect(Collectors.toList());
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web.widget;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.servlet.http.HttpServletResponse;
+import org.openlmis.template.domain.Widget;
+import org.openlmis.template.repository.WidgetRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes pages of widgets that are too big to be materialized in memory. The widgets are read
+ * from a database cursor and written to the response one by one, in the same JSON format as
+ * a {@link org.springframework.data.domain.Page}, including its {@code pageable} and
+ * {@code sort} fields. Only JSON is written, so callers have to make
+ * sure the client accepts it.
+ */
+@Component
+public class WidgetStreamingWriter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WidgetStreamingWriter.class);
+
+  static final String STREAMED_REQUESTS_METRIC = "widget.list.streamed";
+
+  @Autowired
+  private WidgetRepository widgetRepository;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  /**
+   * Writes the given page of widgets to the response. The widgets are read within a read-only
+   * transaction, as the database cursor is only kept open as long as the transaction.
+   */
+  @Transactional(readOnly = true)
+  public void write(Pageable pageable, HttpServletResponse response) throws IOException {
+    LOGGER.debug("Streaming page {} of {} widgets", pageable.getPageNumber(),
+        pageable.getPageSize());
+
+    try (Stream<Widget> widgets = widgetRepository.streamAll(pageable)) {
+      writePage(widgets.map(this::toDetachedDto), WidgetDto.class, pageable, response);
+    }
+  }
+
+  /**
+   * Writes the given page of widgets with only the given fields to the response, like
+   * {@link #write(Pageable, HttpServletResponse)}.
+   */
+  @Transactional(readOnly = true)
+  public void writeProjected(Collection<String> fields, Pageable pageable,
+      HttpServletResponse response) throws IOException {
+    LOGGER.debug("Streaming page {} of {} widgets with fields {}", pageable.getPageNumber(),
+        pageable.getPageSize(), fields);
+
+    try (Stream<Map<String, Object>> widgets = widgetRepository
+        .streamAllProjected(fields, pageable)) {
+      writePage(widgets, Map.class, pageable, response);
+    }
+  }
+
+  private void writePage(Stream<?> content, Class<?> type, Pageable pageable,
+      HttpServletResponse response) throws IOException {
+    meterRegistry.counter(STREAMED_REQUESTS_METRIC).increment();
+
+    // flushing after every widget would defeat the response buffer
+    ObjectWriter elementWriter = objectMapper
+        .writerFor(type)
+        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+    try (JsonGenerator generator = objectMapper.getFactory()
+        .createGenerator(response.getOutputStream())
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+      generator.writeStartObject();
+      generator.writeArrayFieldStart("content");
+
+      int written = 0;
+      for (Iterator<?> iterator = content.iterator(); iterator.hasNext(); written++) {
+        elementWriter.writeValue(generator, iterator.next());
+      }
+
+      generator.writeEndArray();
+
+      // the page is limited by the database, so only a full or empty page needs a count
+      long totalElements = written < pageable.getPageSize()
+          && (written > 0 || pageable.getOffset() == 0)
+          ? pageable.getOffset() + written
+          : widgetRepository.count();
+
+      // the other fields are taken from a page without content, so they are the same as the
+      // ones of a page that is not streamed, apart from the ones that depend on the content
+      ObjectNode fields = objectMapper
+          .valueToTree(new PageImpl<>(Collections.emptyList(), pageable, totalElements));
+      fields.remove("content");
+      fields.put("numberOfElements", written);
+      if (fields.has("empty")) {
+        fields.put("empty", written == 0);
+      }
+
+      Iterator<Map.Entry<String, JsonNode>> iterator = fields.fields();
+      while (iterator.hasNext()) {
+        Map.Entry<String, JsonNode> field = iterator.next();
+        generator.writeFieldName(field.getKey());
+        objectMapper.writeTree(generator, field.getValue());
+      }
+
+      generator.writeEndObject();
+    }
+  }
+
+  // keeps the persistence context from growing with the number of rows
+  private WidgetDto toDetachedDto(Widget widget) {
+    WidgetDto dto = WidgetDto.newInstance(widget);
+    entityManager.detach(widget);
+    return dto;
+  }
+
+}
@@ -0,0 +1,3 @@
+-- ON CONFLICT (id) clauses need a unique index on the id column
+ALTER TABLE widget
+ADD CONSTRAINT widget_pkey PRIMARY KEY (id);
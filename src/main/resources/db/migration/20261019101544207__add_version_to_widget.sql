@@ -0,0 +1,7 @@
+-- incremented on every update, used for optimistic locking and If-Match preconditions
+-- on PostgreSQL 9.6 a column with a default is added by rewriting the whole table under an
+-- ACCESS EXCLUSIVE lock, which blocks all reads and writes of widgets until it is done; for big
+-- tables, add the column beforehand in steps that only take short locks (ADD COLUMN without a
+-- default, SET DEFAULT 0, fill existing rows in batches, SET NOT NULL) and this is skipped
+ALTER TABLE widget
+ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
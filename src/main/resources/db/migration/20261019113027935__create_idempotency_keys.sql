@@ -0,0 +1,9 @@
+-- keys of recently processed requests and their responses, see IdempotencyKeyStore
+CREATE TABLE idempotency_keys (
+    idempotencykey text PRIMARY KEY,
+    requesthash text NOT NULL,
+    response text,
+    createddate timestamp with time zone NOT NULL
+);
+
+CREATE INDEX idempotency_keys_createddate_idx ON idempotency_keys (createddate);
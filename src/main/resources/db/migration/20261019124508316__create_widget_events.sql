@@ -0,0 +1,8 @@
+-- outbox of widget changes pushed to the event stream, see WidgetEventOutbox
+CREATE TABLE widget_events (
+    eventid bigserial PRIMARY KEY,
+    type text NOT NULL,
+    widgetid uuid NOT NULL,
+    payload text NOT NULL,
+    createddate timestamp with time zone NOT NULL DEFAULT now()
+);
@@ -0,0 +1,5 @@
+-- widget events are relayed to the configured sink once, see WidgetEventRelay
+ALTER TABLE widget_events ADD COLUMN relayeddate timestamp with time zone;
+
+CREATE INDEX widget_events_unrelayed_idx ON widget_events (eventid) WHERE relayeddate IS NULL;
+CREATE INDEX widget_events_createddate_idx ON widget_events (createddate);
@@ -0,0 +1,13 @@
+-- keys are scoped to the client and user that sent them, so nobody can replay, or block, the
+-- requests of another principal by reusing their keys; keys stored without a principal could
+-- never be matched again, so they are dropped
+DELETE FROM idempotency_keys;
+
+ALTER TABLE idempotency_keys
+ADD COLUMN principal text NOT NULL;
+
+ALTER TABLE idempotency_keys
+DROP CONSTRAINT idempotency_keys_pkey;
+
+ALTER TABLE idempotency_keys
+ADD CONSTRAINT idempotency_keys_pkey PRIMARY KEY (principal, idempotencykey);
@@ -23,6 +23,7 @@ public class WidgetDataBuilder {
   private UUID id = UUID.randomUUID();
   private String name = "name";
   private String code = RandomStringUtils.randomAlphanumeric(10);
+  private Long version;
 
   public WidgetDataBuilder withName(String name) {
     this.name = name;
@@ -34,6 +35,11 @@ public class WidgetDataBuilder {
     return this;
   }
 
+  public WidgetDataBuilder withVersion(Long version) {
+    this.version = version;
+    return this;
+  }
+
   /**
    * Builds new instance of Widget (with id field).
    */
@@ -51,6 +57,7 @@ public class WidgetDataBuilder {
     Widget widget = new Widget();
     widget.setName(name);
     widget.setCode(code);
+    widget.setVersion(version);
 
     return widget;
   }
@@ -0,0 +1,91 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.datasource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class AdaptivePoolSizerTest {
+
+  private AdaptivePoolSizer sizer = new AdaptivePoolSizer();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(sizer, "minSize", 5);
+    ReflectionTestUtils.setField(sizer, "maxSize", 20);
+    ReflectionTestUtils.setField(sizer, "step", 2);
+    ReflectionTestUtils.setField(sizer, "targetAcquireTime", 5.0);
+    ReflectionTestUtils.setField(sizer, "maxStatementTime", 100.0);
+  }
+
+  @Test
+  public void shouldGrowIfRequestsWaitedForConnections() {
+    ConnectionPoolReport.Resize resize = sizer.getResize(10, window(20, 50, 10, 0, 10));
+
+    assertThat(resize.getFrom()).isEqualTo(10);
+    assertThat(resize.getTo()).isEqualTo(12);
+  }
+
+  @Test
+  public void shouldGrowIfRequestsTimedOut() {
+    assertThat(sizer.getResize(10, window(1, 50, 10, 1, 10)).getTo()).isEqualTo(12);
+  }
+
+  @Test
+  public void shouldNotGrowBeyondMaximumSize() {
+    assertThat(sizer.getResize(19, window(20, 50, 10, 0, 19)).getTo()).isEqualTo(20);
+    assertThat(sizer.getResize(20, window(20, 50, 10, 0, 20))).isNull();
+  }
+
+  @Test
+  public void shouldNotGrowIfDatabaseIsSlow() {
+    assertThat(sizer.getResize(10, window(20, 500, 150, 0, 10))).isNull();
+  }
+
+  @Test
+  public void shouldGrowIfConnectionsAreHeldLongButStatementsAreFast() {
+    assertThat(sizer.getResize(10, window(20, 5000, 10, 0, 10)).getTo()).isEqualTo(12);
+  }
+
+  @Test
+  public void shouldShrinkIfFewConnectionsWereInUse() {
+    ConnectionPoolReport.Resize resize = sizer.getResize(10, window(0.1, 50, 10, 0, 3));
+
+    assertThat(resize.getFrom()).isEqualTo(10);
+    assertThat(resize.getTo()).isEqualTo(8);
+  }
+
+  @Test
+  public void shouldNotShrinkBelowMinimumSize() {
+    assertThat(sizer.getResize(6, window(0, 0, 10, 0, 0)).getTo()).isEqualTo(5);
+    assertThat(sizer.getResize(5, window(0, 0, 10, 0, 0))).isNull();
+  }
+
+  @Test
+  public void shouldNotShrinkIfConnectionsWouldBeMissing() {
+    assertThat(sizer.getResize(10, window(0.1, 50, 10, 0, 8))).isNull();
+  }
+
+  private PoolWindow window(double acquireMillis, double usageMillis, double statementMillis,
+      long timeouts, int peakInUse) {
+    return new PoolWindow(100, acquireMillis, usageMillis, statementMillis, timeouts, peakInUse);
+  }
+
+}
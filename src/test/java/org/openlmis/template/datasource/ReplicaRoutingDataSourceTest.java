@@ -0,0 +1,84 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.datasource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class ReplicaRoutingDataSourceTest {
+
+  private ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(1000);
+
+  @After
+  public void tearDown() {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+  }
+
+  @Test
+  public void shouldRouteReadOnlyTransactionsToUsableReplica() {
+    routingDataSource.setReplicaUsable(true);
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+    assertThat(routingDataSource.determineCurrentLookupKey())
+        .isEqualTo(ReplicaRoutingDataSource.Target.REPLICA);
+  }
+
+  @Test
+  public void shouldRouteReadWriteTransactionsToPrimary() {
+    routingDataSource.setReplicaUsable(true);
+
+    assertThat(routingDataSource.determineCurrentLookupKey())
+        .isEqualTo(ReplicaRoutingDataSource.Target.PRIMARY);
+  }
+
+  @Test
+  public void shouldRouteReadOnlyTransactionsToPrimaryIfReplicaIsNotUsable() {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+    assertThat(routingDataSource.determineCurrentLookupKey())
+        .isEqualTo(ReplicaRoutingDataSource.Target.PRIMARY);
+  }
+
+  @Test
+  public void shouldRouteReadOnlyTransactionsToPrimaryIfReplicaCheckIsStale() {
+    routingDataSource = new ReplicaRoutingDataSource(0);
+    routingDataSource.setReplicaUsable(true);
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+    assertThat(routingDataSource.determineCurrentLookupKey())
+        .isEqualTo(ReplicaRoutingDataSource.Target.PRIMARY);
+  }
+
+  @Test
+  public void shouldStopUsingReplicaThatCannotBeReached() throws SQLException {
+    DataSource replica = mock(DataSource.class);
+    when(replica.getConnection()).thenThrow(new SQLException("connection refused"));
+    routingDataSource.setReplicaUsable(true);
+
+    new ReplicaLagMonitor(replica, routingDataSource, 1000).check();
+
+    assertThat(routingDataSource.isReplicaUsable()).isFalse();
+  }
+
+}
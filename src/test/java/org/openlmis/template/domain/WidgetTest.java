@@ -64,12 +64,13 @@ public class WidgetTest {
 
   @Test
   public void shouldExportData() {
-    Widget widget = new WidgetDataBuilder().build();
+    Widget widget = new WidgetDataBuilder().withVersion(1L).build();
     WidgetDto dto = new WidgetDto();
 
     widget.export(dto);
 
     assertThat(dto.getId()).isEqualTo(widget.getId());
     assertThat(dto.getName()).isEqualTo(widget.getName());
+    assertThat(dto.getVersion()).isEqualTo(widget.getVersion());
   }
 }
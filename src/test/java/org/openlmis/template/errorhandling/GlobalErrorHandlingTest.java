@@ -20,6 +20,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.when;
 
 import java.util.Locale;
+import java.util.UUID;
 import org.hibernate.exception.ConstraintViolationException;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,7 +28,9 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.openlmis.template.domain.Widget;
 import org.openlmis.template.exception.NotFoundException;
+import org.openlmis.template.exception.PreconditionFailedException;
 import org.openlmis.template.exception.ValidationMessageException;
 import org.openlmis.template.i18n.MessageKeys;
 import org.openlmis.template.i18n.MessageService;
@@ -35,6 +38,7 @@ import org.openlmis.template.util.Message;
 import org.openlmis.template.util.Message.LocalizedMessage;
 import org.springframework.context.MessageSource;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 @RunWith(MockitoJUnitRunner.class)
 public class GlobalErrorHandlingTest {
@@ -135,6 +139,34 @@ public class GlobalErrorHandlingTest {
     assertMessage(message, messageKey);
   }
 
+  @Test
+  public void shouldHandlePreconditionFailedException() {
+    // given
+    String messageKey = "key";
+    PreconditionFailedException exp = new PreconditionFailedException(messageKey);
+
+    // when
+    mockMessage(messageKey);
+    LocalizedMessage message = errorHandler.handlePreconditionFailedException(exp);
+
+    // then
+    assertMessage(message, messageKey);
+  }
+
+  @Test
+  public void shouldHandleOptimisticLockingFailure() {
+    // given
+    ObjectOptimisticLockingFailureException exp = new ObjectOptimisticLockingFailureException(
+        Widget.class, UUID.randomUUID());
+
+    // when
+    mockMessage(MessageKeys.ERROR_CONCURRENT_MODIFICATION);
+    LocalizedMessage message = errorHandler.handleOptimisticLockingFailure(exp);
+
+    // then
+    assertMessage(message, MessageKeys.ERROR_CONCURRENT_MODIFICATION);
+  }
+
   private void assertMessage(LocalizedMessage localized, String key) {
     assertThat(localized)
         .hasFieldOrPropertyWithValue("messageKey", key);
@@ -0,0 +1,85 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+
+package org.openlmis.template.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class FileWidgetEventSinkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ObjectMapper objectMapper = new ObjectMapper();
+  private FileWidgetEventSink sink = new FileWidgetEventSink();
+  private File file;
+
+  private UUID widgetId = UUID.randomUUID();
+  private WidgetEvent created = new WidgetEvent(1, WidgetEvent.Type.CREATED, widgetId,
+      "{\n  \"id\" : \"" + widgetId + "\",\n  \"name\" : \"widget\"\n}");
+  private WidgetEvent deleted = new WidgetEvent(2, WidgetEvent.Type.DELETED, widgetId,
+      "{\"id\":\"" + widgetId + "\"}");
+
+  @Before
+  public void setUp() throws IOException {
+    file = new File(folder.getRoot(), "events.jsonl");
+    ReflectionTestUtils.setField(sink, "objectMapper", objectMapper);
+    ReflectionTestUtils.setField(sink, "file", file.getPath());
+  }
+
+  @Test
+  public void shouldWriteOneLinePerEvent() throws IOException {
+    sink.publish(Arrays.asList(created, deleted));
+
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(2);
+
+    JsonNode first = objectMapper.readTree(lines.get(0));
+    assertThat(first.get("id").asLong()).isEqualTo(1);
+    assertThat(first.get("type").asText()).isEqualTo("CREATED");
+    assertThat(first.get("widgetId").asText()).isEqualTo(widgetId.toString());
+    assertThat(first.get("payload").get("name").asText()).isEqualTo("widget");
+
+    assertThat(objectMapper.readTree(lines.get(1)).get("type").asText()).isEqualTo("DELETED");
+  }
+
+  @Test
+  public void shouldAppendToExistingFile() throws IOException {
+    sink.publish(Collections.singletonList(created));
+    sink.publish(Collections.singletonList(deleted));
+
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    assertThat(lines).hasSize(2);
+    assertThat(objectMapper.readTree(lines.get(1)).get("id").asLong()).isEqualTo(2);
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.javers.core.Javers;
+import org.javers.core.commit.Commit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.beans.factory.ObjectProvider;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JaversMetricsPostProcessorTest {
+
+  private static final String AUTHOR = "author";
+
+  @Mock
+  private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+  @Mock
+  private Javers javers;
+
+  @Mock
+  private Commit commit;
+
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private JaversMetricsPostProcessor postProcessor;
+
+  @Before
+  public void setUp() {
+    postProcessor = new JaversMetricsPostProcessor(meterRegistryProvider);
+  }
+
+  @Test
+  public void shouldTimeJaversCommits() {
+    given(meterRegistryProvider.getObject()).willReturn(meterRegistry);
+    given(javers.commit(any(String.class), any())).willReturn(commit);
+    Object widget = new Object();
+
+    Javers timed = (Javers) postProcessor.postProcessAfterInitialization(javers, "javers");
+
+    assertThat(timed.commit(AUTHOR, widget)).isSameAs(commit);
+    verify(javers).commit(AUTHOR, widget);
+    assertThat(meterRegistry.get(JaversMetricsPostProcessor.METRIC_NAME)
+        .tag("operation", "commit")
+        .tag("state", "SUCCESS")
+        .timer()
+        .count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotTimeInMemoryComparisons() {
+    Javers timed = (Javers) postProcessor.postProcessAfterInitialization(javers, "javers");
+
+    timed.compare(new Object(), new Object());
+
+    assertThat(meterRegistry.find(JaversMetricsPostProcessor.METRIC_NAME).timer()).isNull();
+  }
+
+  @Test
+  public void shouldNotWrapOtherBeans() {
+    Object bean = new Object();
+
+    assertThat(postProcessor.postProcessAfterInitialization(bean, "bean")).isSameAs(bean);
+  }
+
+}
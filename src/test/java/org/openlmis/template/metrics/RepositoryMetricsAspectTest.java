@@ -0,0 +1,89 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import org.openlmis.template.domain.Widget;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.repository.Repository;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class RepositoryMetricsAspectTest {
+
+  private static final String CODE = "code";
+
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private TestRepository target = mock(TestRepository.class);
+  private TestRepository repository;
+
+  @Before
+  public void setUp() {
+    RepositoryMetricsAspect aspect = new RepositoryMetricsAspect();
+    ReflectionTestUtils.setField(aspect, "meterRegistry", meterRegistry);
+
+    AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+    proxyFactory.addAspect(aspect);
+    repository = proxyFactory.getProxy();
+  }
+
+  @Test
+  public void shouldTimeRepositoryMethod() {
+    Widget widget = new Widget();
+    given(target.findByCode(CODE)).willReturn(widget);
+
+    assertThat(repository.findByCode(CODE)).isSameAs(widget);
+
+    Timer timer = meterRegistry.get(RepositoryMetricsAspect.METRIC_NAME)
+        .tag("repository", "TestRepository")
+        .tag("method", "findByCode")
+        .tag("state", "SUCCESS")
+        .tag("exception", "None")
+        .timer();
+    assertThat(timer.count()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldTimeFailedRepositoryMethod() {
+    IllegalStateException exception = new IllegalStateException();
+    given(target.findByCode(CODE)).willThrow(exception);
+
+    assertThatThrownBy(() -> repository.findByCode(CODE)).isSameAs(exception);
+
+    Timer timer = meterRegistry.get(RepositoryMetricsAspect.METRIC_NAME)
+        .tag("method", "findByCode")
+        .tag("state", "ERROR")
+        .tag("exception", "IllegalStateException")
+        .timer();
+    assertThat(timer.count()).isEqualTo(1);
+  }
+
+  interface TestRepository extends Repository<Widget, UUID> {
+
+    Widget findByCode(String code);
+
+  }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerMapping;
+
+public class SqlStatisticsFilterTest {
+
+  private static final String URI = "/api/widgets/{id}";
+  private static final String SQL = "select * from template.widgets where id = ?";
+  private static final long NANOS = TimeUnit.MILLISECONDS.toNanos(3);
+
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private MockEnvironment environment = new MockEnvironment();
+  private MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/widgets/1");
+  private MockHttpServletResponse response = new MockHttpServletResponse();
+  private SqlStatisticsFilter filter = new SqlStatisticsFilter();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(filter, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(filter, "environment", environment);
+    ReflectionTestUtils.setField(filter, "statementBudget", 2);
+  }
+
+  @Test
+  public void shouldReturnStatisticsInResponseHeaders() throws Exception {
+    filter.afterPropertiesSet();
+
+    filter.doFilter(request, response, executing(2));
+
+    assertThat(response.getHeader(SqlStatisticsFilter.STATEMENTS_HEADER)).isEqualTo("2");
+    assertThat(response.getHeader(SqlStatisticsFilter.ROWS_HEADER)).isEqualTo("2");
+    assertThat(response.getHeader(SqlStatisticsFilter.TIME_HEADER)).isEqualTo("6");
+  }
+
+  @Test
+  public void shouldWriteHeadersBeforeResponseIsCommitted() throws Exception {
+    filter.afterPropertiesSet();
+
+    filter.doFilter(request, response, (req, res) -> {
+      execute(1);
+      res.getOutputStream().write(1);
+      res.flushBuffer();
+      execute(1);
+    });
+
+    assertThat(response.isCommitted()).isTrue();
+    assertThat(response.getHeader(SqlStatisticsFilter.STATEMENTS_HEADER)).isEqualTo("1");
+  }
+
+  @Test
+  public void shouldNotReturnStatisticsInProduction() throws Exception {
+    environment.setActiveProfiles("production");
+    filter.afterPropertiesSet();
+
+    filter.doFilter(request, response, executing(2));
+
+    assertThat(response.getHeaderNames()).isEmpty();
+    assertThat(meterRegistry.get(SqlStatisticsFilter.STATEMENTS_METRIC)
+        .tag("method", "GET")
+        .summary()
+        .totalAmount())
+        .isEqualTo(2);
+    assertThat(meterRegistry.find(SqlStatisticsFilter.ROWS_METRIC).summary()).isNull();
+  }
+
+  @Test
+  public void shouldTagMetricsOfAsyncRequestsAsPartial() throws Exception {
+    filter.afterPropertiesSet();
+    request.setAsyncSupported(true);
+
+    filter.doFilter(request, response, (req, res) -> {
+      execute(1);
+      req.startAsync();
+    });
+
+    assertThat(meterRegistry.get(SqlStatisticsFilter.STATEMENTS_METRIC)
+        .tag("uri", URI)
+        .tag("partial", "true")
+        .summary()
+        .count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void shouldRecordStatisticsAsMetricsTaggedWithEndpoint() throws Exception {
+    filter.afterPropertiesSet();
+
+    filter.doFilter(request, response, executing(2));
+
+    assertThat(meterRegistry.get(SqlStatisticsFilter.STATEMENTS_METRIC)
+        .tag("method", "GET")
+        .tag("uri", URI)
+        .tag("partial", "false")
+        .summary()
+        .totalAmount())
+        .isEqualTo(2);
+    assertThat(meterRegistry.get(SqlStatisticsFilter.ROWS_METRIC)
+        .tag("uri", URI)
+        .summary()
+        .totalAmount())
+        .isEqualTo(2);
+    assertThat(meterRegistry.get(SqlStatisticsFilter.TIME_METRIC)
+        .tag("uri", URI)
+        .timer()
+        .totalTime(TimeUnit.MILLISECONDS))
+        .isEqualTo(6);
+    assertThat(meterRegistry.find(SqlStatisticsFilter.BUDGET_EXCEEDED_METRIC).counter())
+        .isNull();
+  }
+
+  @Test
+  public void shouldCountRequestsExceedingStatementBudget() throws Exception {
+    filter.afterPropertiesSet();
+
+    filter.doFilter(request, response, executing(3));
+
+    assertThat(meterRegistry.get(SqlStatisticsFilter.BUDGET_EXCEEDED_METRIC)
+        .tag("uri", URI)
+        .counter()
+        .count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void shouldUnbindStatisticsAfterRequest() throws Exception {
+    filter.afterPropertiesSet();
+
+    filter.doFilter(request, response, executing(1));
+
+    assertThat(SqlStatistics.current()).isNull();
+  }
+
+  private FilterChain executing(int statements) {
+    return (req, res) -> execute(statements);
+  }
+
+  private void execute(int statements) {
+    for (int i = 0; i < statements; i++) {
+      SqlStatistics.current().recordStatement(SQL, NANOS);
+      SqlStatistics.current().recordRows(1);
+    }
+    request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, URI);
+  }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class ETagsTest {
+
+  @Test
+  public void shouldCreateStrongTagFromVersion() {
+    assertThat(ETags.fromVersion(3)).isEqualTo("\"3\"");
+  }
+
+  @Test
+  public void shouldParseVersionsProducedByFromVersion() {
+    assertThat(ETags.parseVersions(ETags.fromVersion(7))).containsExactly(7L);
+  }
+
+  @Test
+  public void shouldParseListOfTags() {
+    assertThat(ETags.parseVersions("\"1\", \"2\",\"3\"")).containsExactly(1L, 2L, 3L);
+  }
+
+  @Test
+  public void shouldSkipWeakAndForeignTags() {
+    assertThat(ETags.parseVersions("W/\"1\", \"abc\", 2, \"\", \"4\"")).containsExactly(4L);
+  }
+
+  @Test
+  public void shouldRecognizeAnyTag() {
+    assertThat(ETags.isAny(" * ")).isTrue();
+    assertThat(ETags.isAny("\"1\"")).isFalse();
+  }
+
+}
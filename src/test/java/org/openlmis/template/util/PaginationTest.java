@@ -17,7 +17,11 @@ package org.openlmis.template.util;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.junit.Test;
@@ -89,6 +93,78 @@ public class PaginationTest {
     assertThat(pagedListContent.get(2)).isEqualTo(9);
   }
 
+  @Test
+  public void getPageReturnsTheCorrectPageOfIterable() {
+    Iterable<Integer> iterable = () -> getList().iterator();
+
+    Page<Integer> pagedList = Pagination.getPage(iterable, PageRequest.of(1, 3));
+
+    assertThat(pagedList.getContent()).containsExactly(3, 4, 5);
+    assertThat(pagedList.getTotalElements()).isEqualTo(10);
+  }
+
+  @Test
+  public void getPageReturnsEmptyResultIfSpecifiedPageNumberIsOutOfBoundsOfIterable() {
+    Iterable<Integer> iterable = () -> getList().iterator();
+
+    Page<Integer> pagedList = Pagination.getPage(iterable, PageRequest.of(Integer.MAX_VALUE, 5));
+
+    assertThat(pagedList.getContent()).isEmpty();
+    assertThat(pagedList.getTotalElements()).isEqualTo(10);
+  }
+
+  @Test
+  public void getPageReturnsAllValuesOfIterableEvenWhenSizeIsOutOfBounds() {
+    Iterable<Integer> iterable = () -> getList().iterator();
+
+    Page<Integer> pagedList = Pagination.getPage(iterable, PageRequest.of(0, Integer.MAX_VALUE));
+
+    assertThat(pagedList.getContent()).isEqualTo(getList());
+  }
+
+  @Test
+  public void getPageWalksCollectionOnlyUpToTheEndOfThePage() {
+    AtomicInteger visited = new AtomicInteger();
+    Collection<Integer> collection = new AbstractCollection<Integer>() {
+      @Override
+      public Iterator<Integer> iterator() {
+        Iterator<Integer> iterator = getList().iterator();
+        return new Iterator<Integer>() {
+          @Override
+          public boolean hasNext() {
+            return iterator.hasNext();
+          }
+
+          @Override
+          public Integer next() {
+            visited.incrementAndGet();
+            return iterator.next();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return getList().size();
+      }
+    };
+
+    Page<Integer> pagedList = Pagination.getPage(collection, PageRequest.of(1, 3));
+
+    assertThat(pagedList.getContent()).containsExactly(3, 4, 5);
+    assertThat(pagedList.getTotalElements()).isEqualTo(10);
+    assertThat(visited.get()).isEqualTo(6);
+  }
+
+  @Test
+  public void getPageReturnsTheCorrectPageOfStream() {
+    Page<Integer> pagedList = Pagination.getPage(getList().stream(), PageRequest.of(3, 3));
+
+    assertThat(pagedList.getContent()).containsExactly(9);
+    assertThat(pagedList.getTotalElements()).isEqualTo(10);
+    assertThat(pagedList.isLast()).isTrue();
+  }
+
   private List<Integer> getList() {
     return IntStream
         .range(0, 10)
@@ -0,0 +1,123 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+  private static final String KEY = "key";
+
+  private SingleFlight<String, String> singleFlight = new SingleFlight<>();
+  private AtomicInteger loads = new AtomicInteger();
+  private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldShareInFlightLoadBetweenConcurrentCallers() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicReference<Thread> follower = new AtomicReference<>();
+
+    Future<String> leaderResult = executor.submit(() -> singleFlight.execute(KEY, () -> {
+      started.countDown();
+      await(release);
+      return "value" + loads.incrementAndGet();
+    }));
+    started.await();
+
+    Future<String> followerResult = executor.submit(() -> {
+      follower.set(Thread.currentThread());
+      return singleFlight.execute(KEY, () -> "value" + loads.incrementAndGet());
+    });
+    waitUntilWaiting(follower);
+    release.countDown();
+
+    assertThat(leaderResult.get()).isEqualTo("value1");
+    assertThat(followerResult.get()).isEqualTo("value1");
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldLoadAgainOnceThePreviousLoadIsDone() {
+    singleFlight.execute(KEY, () -> "value" + loads.incrementAndGet());
+
+    assertThat(singleFlight.execute(KEY, () -> "value" + loads.incrementAndGet()))
+        .isEqualTo("value2");
+  }
+
+  @Test
+  public void shouldNotShareLoadsOfDifferentKeys() {
+    singleFlight.execute(KEY, () -> singleFlight.execute("other", () -> {
+      loads.incrementAndGet();
+      return "other";
+    }));
+
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotShareForgottenLoad() {
+    String value = singleFlight.execute(KEY, () -> {
+      singleFlight.forget(KEY);
+      // would wait for itself if the load in flight was shared
+      return singleFlight.execute(KEY, () -> "value" + loads.incrementAndGet());
+    });
+
+    assertThat(value).isEqualTo("value1");
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldRethrowLoaderException() {
+    IllegalStateException exception = new IllegalStateException();
+
+    assertThatThrownBy(() -> singleFlight.execute(KEY, () -> {
+      throw exception;
+    })).isSameAs(exception);
+    assertThat(singleFlight.execute(KEY, () -> "value")).isEqualTo("value");
+  }
+
+  private void waitUntilWaiting(AtomicReference<Thread> thread) throws InterruptedException {
+    while (null == thread.get() || thread.get().getState() != Thread.State.WAITING) {
+      Thread.sleep(10);
+    }
+  }
+
+  private void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(ex);
+    }
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+public class UuidBloomFilterTest {
+
+  private static final int INSERTIONS = 10_000;
+  private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+  private UuidBloomFilter filter = UuidBloomFilter.create(INSERTIONS, FALSE_POSITIVE_PROBABILITY);
+
+  @Test
+  public void shouldContainAllAddedIds() {
+    List<UUID> ids = randomIds(INSERTIONS);
+    ids.forEach(filter::put);
+
+    assertThat(ids).allMatch(filter::mightContain);
+  }
+
+  @Test
+  public void shouldNotContainMostOfOtherIds() {
+    randomIds(INSERTIONS).forEach(filter::put);
+
+    long falsePositives = randomIds(INSERTIONS)
+        .stream()
+        .filter(filter::mightContain)
+        .count();
+
+    // allows for some statistical deviation from the expected 100
+    assertThat(falsePositives).isLessThan((long) (2 * INSERTIONS * FALSE_POSITIVE_PROBABILITY));
+  }
+
+  @Test
+  public void shouldNotContainAnythingWhenEmpty() {
+    assertThat(filter.mightContain(UUID.randomUUID())).isFalse();
+  }
+
+  private List<UUID> randomIds(int count) {
+    return Stream
+        .generate(UUID::randomUUID)
+        .limit(count)
+        .collect(Collectors.toList());
+  }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web.widget;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openlmis.template.repository.WidgetRepository;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WidgetIdFilterTest {
+
+  @Mock
+  private WidgetRepository widgetRepository;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @InjectMocks
+  private WidgetIdFilter widgetIdFilter;
+
+  private UUID existing = UUID.randomUUID();
+  private UUID missing = UUID.randomUUID();
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(widgetIdFilter, "enabled", true);
+  }
+
+  @Test
+  public void shouldAllowEveryIdBeforeFilterIsBuilt() {
+    assertThat(widgetIdFilter.mightExist(missing)).isTrue();
+  }
+
+  @Test
+  public void shouldRejectIdsThatAreNotInDatabase() {
+    rebuild();
+
+    assertThat(widgetIdFilter.mightExist(existing)).isTrue();
+    assertThat(widgetIdFilter.mightExist(missing)).isFalse();
+  }
+
+  @Test
+  public void shouldAllowIdsThatAreMissingInFilterButExistInDatabase() {
+    rebuild();
+    when(widgetRepository.existsById(missing)).thenReturn(true);
+
+    assertThat(widgetIdFilter.mightExist(missing)).isTrue();
+    assertThat(widgetIdFilter.mightExist(missing)).isTrue();
+
+    // the confirmed id was added to the filter, so it is looked up only once
+    verify(widgetRepository).existsById(missing);
+  }
+
+  @Test
+  public void shouldAllowAddedIds() {
+    rebuild();
+    widgetIdFilter.add(missing);
+
+    assertThat(widgetIdFilter.mightExist(missing)).isTrue();
+  }
+
+  @Test
+  public void shouldKeepIdsAddedDuringRebuild() {
+    rebuild();
+    UUID added = UUID.randomUUID();
+    when(widgetRepository.streamAllIds()).thenAnswer(invocation -> {
+      widgetIdFilter.add(added);
+      return Stream.of(existing);
+    });
+
+    widgetIdFilter.rebuild();
+
+    assertThat(widgetIdFilter.mightExist(added)).isTrue();
+    assertThat(widgetIdFilter.mightExist(missing)).isFalse();
+  }
+
+  @Test
+  public void shouldNotBuildFilterIfDisabled() {
+    ReflectionTestUtils.setField(widgetIdFilter, "enabled", false);
+
+    widgetIdFilter.rebuild();
+
+    assertThat(widgetIdFilter.mightExist(missing)).isTrue();
+    verify(widgetRepository, never()).streamAllIds();
+  }
+
+  private void rebuild() {
+    when(widgetRepository.count()).thenReturn(1L);
+    when(widgetRepository.streamAllIds()).thenReturn(Stream.of(existing));
+
+    widgetIdFilter.rebuild();
+  }
+
+}
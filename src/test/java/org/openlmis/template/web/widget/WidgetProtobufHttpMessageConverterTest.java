@@ -0,0 +1,171 @@
+/*
+ * This program is part of the OpenLMIS logistics management information system platform software.
+ * Copyright © 2017 VillageReach
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU Affero General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should have received a copy of
+ * the GNU Affero General Public License along with this program. If not, see
+ * http://www.gnu.org/licenses.  For additional information contact info@OpenLMIS.org.
+ */
+
+package org.openlmis.template.web.widget;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.openlmis.template.web.widget.WidgetProtobufHttpMessageConverter.APPLICATION_PROTOBUF;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnknownFieldSet;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.openlmis.template.WidgetDataBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+public class WidgetProtobufHttpMessageConverterTest {
+
+  private WidgetProtobufHttpMessageConverter converter = new WidgetProtobufHttpMessageConverter();
+
+  private WidgetDto widget = WidgetDto.newInstance(new WidgetDataBuilder()
+      .withVersion(2L)
+      .build());
+
+  @Test
+  public void shouldWriteAndReadWidget() throws IOException {
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+    converter.write(widget, WidgetDto.class, APPLICATION_PROTOBUF, output);
+
+    Object result = converter.read(WidgetDto.class, null,
+        new MockHttpInputMessage(output.getBodyAsBytes()));
+
+    assertThat(output.getHeaders().getContentType()).isEqualTo(APPLICATION_PROTOBUF);
+    assertThat(result).isEqualTo(widget);
+  }
+
+  @Test
+  public void shouldWriteWidgetUsingProtoFieldNumbers() throws IOException {
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+    converter.write(widget, WidgetDto.class, APPLICATION_PROTOBUF, output);
+
+    UnknownFieldSet fields = UnknownFieldSet.parseFrom(output.getBodyAsBytes());
+
+    assertThat(getString(fields, WidgetProtobufHttpMessageConverter.WIDGET_ID))
+        .isEqualTo(widget.getId().toString());
+    assertThat(getString(fields, WidgetProtobufHttpMessageConverter.WIDGET_NAME))
+        .isEqualTo(widget.getName());
+    assertThat(getString(fields, WidgetProtobufHttpMessageConverter.WIDGET_CODE))
+        .isEqualTo(widget.getCode());
+    assertThat(fields.getField(WidgetProtobufHttpMessageConverter.WIDGET_VERSION)
+        .getVarintList()).containsExactly(widget.getVersion());
+  }
+
+  @Test
+  public void shouldWritePageOfWidgets() throws IOException {
+    WidgetDto other = WidgetDto.newInstance(new WidgetDataBuilder().build());
+    Page<WidgetDto> page = new PageImpl<>(Arrays.asList(widget, other),
+        PageRequest.of(0, 2), 5);
+
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+    converter.write(page, getPageType(), APPLICATION_PROTOBUF, output);
+
+    UnknownFieldSet fields = UnknownFieldSet.parseFrom(output.getBodyAsBytes());
+    List<ByteString> content = fields
+        .getField(WidgetProtobufHttpMessageConverter.PAGE_CONTENT)
+        .getLengthDelimitedList();
+
+    assertThat(content).hasSize(2);
+    assertThat(converter.read(WidgetDto.class, null,
+        new MockHttpInputMessage(content.get(1).toByteArray()))).isEqualTo(other);
+    assertThat(fields.getField(WidgetProtobufHttpMessageConverter.PAGE_TOTAL_ELEMENTS)
+        .getVarintList()).containsExactly(5L);
+    assertThat(fields.getField(WidgetProtobufHttpMessageConverter.PAGE_TOTAL_PAGES)
+        .getVarintList()).containsExactly(3L);
+  }
+
+  @Test
+  public void shouldWriteOnlyWidgetsAndPagesOfWidgets() {
+    assertThat(converter.canWrite(WidgetDto.class, WidgetDto.class, APPLICATION_PROTOBUF))
+        .isTrue();
+    assertThat(converter.canWrite(getPageType(), PageImpl.class, APPLICATION_PROTOBUF))
+        .isTrue();
+    assertThat(converter.canWrite(new ParameterizedTypeReference<Page<String>>() {}.getType(),
+        PageImpl.class, APPLICATION_PROTOBUF)).isFalse();
+    assertThat(converter.canWrite(String.class, String.class, APPLICATION_PROTOBUF)).isFalse();
+    assertThat(converter.canWrite(WidgetDto.class, WidgetDto.class,
+        MediaType.APPLICATION_JSON)).isFalse();
+  }
+
+  @Test
+  public void shouldSkipUnknownFields() throws IOException {
+    UnknownFieldSet fields = UnknownFieldSet.parseFrom(toBytes(widget));
+    byte[] withUnknownField = UnknownFieldSet.newBuilder(fields)
+        .addField(15, UnknownFieldSet.Field.newBuilder().addVarint(42).build())
+        .build()
+        .toByteArray();
+
+    Object result = converter.read(WidgetDto.class, null,
+        new MockHttpInputMessage(withUnknownField));
+
+    assertThat(result).isEqualTo(widget);
+  }
+
+  @Test
+  public void shouldSkipKnownFieldsWithUnexpectedWireType() throws IOException {
+    byte[] nameAsVarint = UnknownFieldSet.newBuilder()
+        .addField(WidgetProtobufHttpMessageConverter.WIDGET_NAME,
+            UnknownFieldSet.Field.newBuilder().addVarint(42).build())
+        .addField(WidgetProtobufHttpMessageConverter.WIDGET_CODE,
+            UnknownFieldSet.Field.newBuilder()
+                .addLengthDelimited(ByteString.copyFromUtf8(widget.getCode()))
+                .build())
+        .build()
+        .toByteArray();
+
+    WidgetDto result = (WidgetDto) converter.read(WidgetDto.class, null,
+        new MockHttpInputMessage(nameAsVarint));
+
+    assertThat(result.getName()).isNull();
+    assertThat(result.getCode()).isEqualTo(widget.getCode());
+  }
+
+  @Test(expected = HttpMessageNotReadableException.class)
+  public void shouldRejectInvalidId() throws IOException {
+    byte[] invalidId = UnknownFieldSet.newBuilder()
+        .addField(WidgetProtobufHttpMessageConverter.WIDGET_ID,
+            UnknownFieldSet.Field.newBuilder()
+                .addLengthDelimited(ByteString.copyFromUtf8("not-an-uuid"))
+                .build())
+        .build()
+        .toByteArray();
+
+    converter.read(WidgetDto.class, null, new MockHttpInputMessage(invalidId));
+  }
+
+  private byte[] toBytes(WidgetDto dto) throws IOException {
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+    converter.write(dto, WidgetDto.class, APPLICATION_PROTOBUF, output);
+    return output.getBodyAsBytes();
+  }
+
+  private String getString(UnknownFieldSet fields, int number) {
+    return fields.getField(number).getLengthDelimitedList().get(0).toStringUtf8();
+  }
+
+  private Type getPageType() {
+    return new ParameterizedTypeReference<Page<WidgetDto>>() {}.getType();
+  }
+
+}